@@ -0,0 +1,157 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+	<b>AggregateRecorder</b> sums up the <code>SolverMetrics</code> per solver into counters and
+	keeps a histogram of the solver times. The values can be read at any time, for example to 
+	export them from a long running service. Recording does not lock.<p>
+
+	The histogram buckets are powers of two of nanoseconds: bucket <code>i</code> counts the 
+	solves, that took at least <code>2^i</code> but less than <code>2^(i+1)</code> nanoseconds.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class AggregateRecorder implements MetricsRecorder
+{
+	/** Names of the counters, that are kept for each solver. */
+	public static final String[] COUNTERS = {"solves", "points", "pointsScanned", "passes", "supportChanges",
+	                                         "subGroupChecks", "bytesAllocated", "gatherNanos", "initNanos",
+	                                         "subGroupNanos", "rescanNanos", "totalNanos"};
+
+	private ConcurrentHashMap<String, Aggregate> aggregates;
+
+	/** Create an empty recorder. */
+
+	public AggregateRecorder()
+	{
+		aggregates = new ConcurrentHashMap<String, Aggregate>();
+	}
+
+	@Override
+	public void record(SolverMetrics metrics)
+	{
+		Aggregate a = aggregates.get(metrics.solver);
+		if (a == null)
+		{
+			aggregates.putIfAbsent(metrics.solver, new Aggregate());
+			a = aggregates.get(metrics.solver);
+		}
+		a.add(metrics);
+	}
+
+	/**
+		All the counters as <code>solver.counter</code> and value pairs, 
+		for example <code>GeoFit.passes</code>.
+	*/
+
+	public Map<String, Long> counters()
+	{
+		TreeMap<String, Long> map = new TreeMap<String, Long>();
+		for (Map.Entry<String, Aggregate> e : aggregates.entrySet())
+			for (int c = 0; c < COUNTERS.length; c++)
+				map.put(e.getKey() + "." + COUNTERS[c], e.getValue().counter[c].sum());
+		return map;
+	}
+
+	/** The histogram of solver times of one solver. The array is empty if the solver has not been recorded. */
+
+	public long[] histogram(String solver)
+	{
+		Aggregate a = aggregates.get(solver);
+		if (a == null)
+			return new long[0];
+		long[] h = new long[a.histogram.length()];
+		for (int i = 0; i < h.length; i++)
+			h[i] = a.histogram.get(i);
+		return h;
+	}
+
+	/**
+		An estimate of a percentile of the solver time of one solver in nanoseconds.
+		The value is the upper limit of the histogram bucket, where the percentile falls.
+
+		@param fraction  for example 0.99 for the 99th percentile
+	*/
+
+	public long percentile(String solver, double fraction)
+	{
+		long[] h = histogram(solver);
+		long total = 0;
+		for (long c : h)
+			total += c;
+		if (total == 0)
+			return 0;
+		long limit = (long)Math.ceil(total*fraction), sum = 0;
+		for (int i = 0; i < h.length; i++)
+		{
+			sum += h[i];
+			if (sum >= limit)
+				return (i < 62 ? 2L << i : Long.MAX_VALUE);
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/** Clear all the counters and histograms. */
+
+	public void reset()
+	{
+		aggregates.clear();
+	}
+
+	/** Get the counters as text, one per line */
+
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Long> e : counters().entrySet())
+			text.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+		return text.toString();
+	}
+
+	/** The counters and the histogram of one solver. */
+
+	private static class Aggregate
+	{
+		LongAdder[] counter = new LongAdder[COUNTERS.length];
+		AtomicLongArray histogram = new AtomicLongArray(64);
+
+		Aggregate()
+		{
+			for (int c = 0; c < counter.length; c++)
+				counter[c] = new LongAdder();
+		}
+
+		void add(SolverMetrics m)
+		{
+			counter[0].increment();
+			counter[1].add(m.points);
+			counter[2].add(m.pointsScanned);
+			counter[3].add(m.passes);
+			counter[4].add(m.supportChanges);
+			counter[5].add(m.subGroupChecks);
+			counter[6].add(Math.max(m.bytesAllocated, 0));
+			counter[7].add(m.gatherNanos);
+			counter[8].add(m.initNanos);
+			counter[9].add(m.subGroupNanos);
+			counter[10].add(m.rescanNanos);
+			counter[11].add(m.totalNanos);
+			histogram.incrementAndGet(63-Long.numberOfLeadingZeros(Math.max(m.totalNanos, 1)));
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+	<b>AsyncSolver</b> runs the <code>GeoFit</code> and <code>Ritter</code> solvers in the background
+	and gives the results as <code>CompletableFuture</code>s, so that the calling thread, like
+	the UI thread, is not blocked.<p>
+
+	Each request gets a solver of its own. Cancelling the future stops the solver at the start
+	of its next pass, so a request, that has become stale, does not keep consuming CPU.<p>
+
+	By default the solves run on a shared pool of daemon threads, one per processor. Any other
+	<code>Executor</code> can be given instead, for example one with a virtual thread per task.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class AsyncSolver
+{
+	private static ExecutorService sharedPool;
+	private Executor executor;
+	private MetricsRecorder recorder;
+
+	/** Create the solver using the shared thread pool. */
+
+	public AsyncSolver()
+	{
+		executor = sharedPool();
+	}
+
+	/** Create the solver using the given executor. */
+
+	public AsyncSolver(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/** Set a recorder, that receives the metrics of every solve. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/** Calculate a <code>GeoFit</code> bounding sphere for a set of vertices. */
+
+	public CompletableFuture<BoundingSphere> boundingSphere(final Vec3[] vertex)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.boundingSphere(vertex));
+	}
+
+	/** Calculate a <code>GeoFit</code> bounding sphere for a set of vertices within a time and a pass budget. */
+
+	public CompletableFuture<BoundingSphere> boundingSphere(final Vec3[] vertex, final double timeLimit, final int passLimit)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.boundingSphere(vertex, timeLimit, passLimit));
+	}
+
+	/** Calculate a <code>GeoFit</code> bounding sphere for points in any storage. */
+
+	public CompletableFuture<BoundingSphere> boundingSphere(final PointData data)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.boundingSphere(data));
+	}
+
+	/** Calculate a <code>GeoFit</code> bounding sphere for an object in a scene. */
+
+	public CompletableFuture<BoundingSphere> boundingSphere(final ObjectInfo info)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.boundingSphere(info));
+	}
+
+	/** Calculate a <code>GeoFit</code> bounding sphere for a group of objects. */
+
+	public CompletableFuture<BoundingSphere> boundingSphere(final ArrayList<ObjectInfo> infoList)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.boundingSphere(infoList));
+	}
+
+	/** Calculate a <code>GeoFit.fastSphere()</code> for a set of vertices. */
+
+	public CompletableFuture<BoundingSphere> fastSphere(final Vec3[] vertex)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.fastSphere(vertex));
+	}
+
+	/** Calculate a <code>GeoFit.fastSphere()</code> for points in any storage. */
+
+	public CompletableFuture<BoundingSphere> fastSphere(final PointData data)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.fastSphere(data));
+	}
+
+	/** Calculate a <code>GeoFit.fastSphere()</code> for an object in a scene. */
+
+	public CompletableFuture<BoundingSphere> fastSphere(final ObjectInfo info)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.fastSphere(info));
+	}
+
+	/** Calculate a <code>GeoFit.fastSphere()</code> for a group of objects. */
+
+	public CompletableFuture<BoundingSphere> fastSphere(final ArrayList<ObjectInfo> infoList)
+	{
+		final GeoFit geofit = new GeoFit();
+		geofit.recorder(recorder);
+		return submit(geofit::cancel, () -> geofit.fastSphere(infoList));
+	}
+
+	/**
+		Calculate a <code>Ritter</code> bounding sphere for a set of vertices.
+
+		@param mode  <code>Ritter.FIRST</code> or <code>Ritter.LAST</code>
+	*/
+
+	public CompletableFuture<BoundingSphere> ritterSphere(final Vec3[] vertex, int mode)
+	{
+		final Ritter ritter = new Ritter();
+		ritter.mode(mode);
+		ritter.recorder(recorder);
+		return submit(ritter::cancel, () -> ritter.boundingSphere(vertex));
+	}
+
+	/**
+		Calculate a <code>Ritter</code> bounding sphere for an object in a scene.
+
+		@param mode  <code>Ritter.FIRST</code> or <code>Ritter.LAST</code>
+	*/
+
+	public CompletableFuture<BoundingSphere> ritterSphere(final ObjectInfo info, int mode)
+	{
+		final Ritter ritter = new Ritter();
+		ritter.mode(mode);
+		ritter.recorder(recorder);
+		return submit(ritter::cancel, () -> ritter.boundingSphere(info));
+	}
+
+	/**
+		Calculate a <code>Ritter</code> bounding sphere for a group of objects.
+
+		@param mode  <code>Ritter.FIRST</code> or <code>Ritter.LAST</code>
+	*/
+
+	public CompletableFuture<BoundingSphere> ritterSphere(final ArrayList<ObjectInfo> infoList, int mode)
+	{
+		final Ritter ritter = new Ritter();
+		ritter.mode(mode);
+		ritter.recorder(recorder);
+		return submit(ritter::cancel, () -> ritter.boundingSphere(infoList));
+	}
+
+	/**
+		Run the solve on the executor. If the future is cancelled before the solve starts,
+		it is never started. If it is cancelled while running, the solver is told to stop.
+	*/
+
+	private CompletableFuture<BoundingSphere> submit(final Runnable cancel, final Callable<BoundingSphere> solve)
+	{
+		final CompletableFuture<BoundingSphere> future = new CompletableFuture<BoundingSphere>();
+		future.whenComplete((bou, ex) ->
+		{
+			if (future.isCancelled())
+				cancel.run();
+		});
+		executor.execute(() ->
+		{
+			if (future.isDone())
+				return;
+			try
+			{
+				future.complete(solve.call());
+			}
+			catch (Throwable ex)
+			{
+				future.completeExceptionally(ex);
+			}
+		});
+		return future;
+	}
+
+	/** The pool is created when it is first needed. Its threads do not keep the application running. */
+
+	static synchronized ExecutorService sharedPool()
+	{
+		if (sharedPool == null)
+		{
+			final AtomicInteger count = new AtomicInteger();
+			sharedPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "BoundingSphere-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sharedPool;
+	}
+}
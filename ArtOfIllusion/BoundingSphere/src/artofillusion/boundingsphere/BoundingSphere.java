@@ -44,11 +44,15 @@ public class BoundingSphere
 	/** Where the points, that defined this BoundinSphere, were at the time. */
 	public ArrayList<Vec3> supportPositions;
 	
-	//public ArrayList<Integer> supportIndices;
+	/** The indices of the support points in the data, that the sphere was fitted to. */
+	public ArrayList<Integer> supportIndices;
 	
 	/** The class, that creates the sphere, may write additional information here or the class using it may store data.*/
 	public String metatext;
 
+	/** The solver, that creates the sphere, may write the details of the solve here. */
+	public SolverMetrics metrics;
+
 	/**
 		Define an empty BoundingSphere
 	*/
@@ -156,6 +160,47 @@ public class BoundingSphere
 	{
 		return (center.distance(sphere.center)+sphere.radius <= radius);
 	}
+
+	/**
+		Check if all the points are inside this BoundingSphere or outside by no more than the
+		tolerance. The check stops at the first point outside. See <code>Containment</code>.
+	*/
+
+	public boolean encloses(Vec3[] vertex, double tolerance)
+	{
+		return Containment.check(this, vertex, tolerance).fits;
+	}
+
+	/**
+		Check if all the points are inside this BoundingSphere or outside by no more than the
+		tolerance. The check stops at the first point outside. See <code>Containment</code>.
+	*/
+
+	public boolean encloses(PointData data, double tolerance)
+	{
+		return Containment.check(this, data, tolerance).fits;
+	}
+
+	/**
+		Create a BoundingSphere, that encloses both this and the other BoundingSphere.
+		If neither contains the other, the result is the smallest sphere around the two 
+		with the rounding taken outwards. It is <code>NON_MINIMAL</code> for the points 
+		of both, unless one already contained the other.
+	*/
+	
+	public BoundingSphere enclose(BoundingSphere sphere)
+	{
+		double centerToCenter = center.distance(sphere.center);
+		if (centerToCenter+sphere.radius <= radius)
+			return new BoundingSphere(new Vec3(center), radius, fit);
+		if (centerToCenter+radius <= sphere.radius)
+			return new BoundingSphere(new Vec3(sphere.center), sphere.radius, sphere.fit);
+
+		double r = (centerToCenter+radius+sphere.radius)*0.5;
+		Vec3 c = center.plus(sphere.center.minus(center).times((r-radius)/centerToCenter));
+		r = Math.max(r, Math.max(c.distance(center)+radius, c.distance(sphere.center)+sphere.radius));
+		return new BoundingSphere(c, Math.nextUp(r), NON_MINIMAL);
+	}
 	
 	/**
 		The direction in which the other BoundingSphere is.
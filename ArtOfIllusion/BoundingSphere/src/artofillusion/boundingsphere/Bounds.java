@@ -0,0 +1,78 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+
+/**
+	<b>Bounds</b> holds the bounding volumes of one set of points, as made by
+	<code>BoundsBuilder</code>: the bounding sphere, the axis aligned bounding box and
+	a k-DOP.<p>
+
+	A k-DOP <i>(discrete oriented polytope)</i> is the intersection of k/2 slabs. Slab
+	<code>d</code> holds the points <code>p</code>, for which
+	<code>dopMin[d] &lt;= dir[d].dot(p) &lt;= dopMax[d]</code>. The directions are not
+	normalized, so the slab limits are in units of the length of each direction.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class Bounds
+{
+	/** The bounding sphere. */
+	public BoundingSphere sphere;
+
+	/** The corners of the axis aligned bounding box. */
+	public Vec3 boxMin, boxMax;
+
+	/** The directions of the k-DOP, as {x, y, z}. */
+	public double[][] dir;
+
+	/** The slab limits of the k-DOP along each direction. */
+	public double[] dopMin, dopMax;
+
+	/** The time to build all of the volumes, in milliseconds. */
+	public double buildTime;
+
+	/** The number of planes of the k-DOP. */
+
+	public int k()
+	{
+		return dir.length*2;
+	}
+
+	/** The center of the bounding box. */
+
+	public Vec3 boxCenter()
+	{
+		return boxMin.plus(boxMax).times(0.5);
+	}
+
+	/** Check if the point is inside the k-DOP. Points on the surface are inside. */
+
+	public boolean dopContains(Vec3 p)
+	{
+		for (int d = 0; d < dir.length; d++)
+		{
+			double s = dir[d][0]*p.x+dir[d][1]*p.y+dir[d][2]*p.z;
+			if (s < dopMin[d] || s > dopMax[d])
+				return false;
+		}
+		return true;
+	}
+
+	/** Get a verbal description of the bounds */
+
+	@Override
+	public String toString()
+	{
+		return "Bounds[" + sphere + " Box: " + boxMin + " - " + boxMax + " DOP: " + k() + "]";
+	}
+}
@@ -0,0 +1,166 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.Arrays;
+
+/**
+	<b>BoundsBuilder</b> makes the bounding sphere, the axis aligned bounding box and a
+	k-DOP of a set of points together, so that the data is read as few times as possible.<p>
+
+	The first pass projects each point on the coordinate axes and on the directions of the
+	k-DOP. The smallest and largest projections give the box and the slabs of the k-DOP and
+	the points, that have them, are the extremal points of the set. <code>GeoFit</code> solves
+	the sphere of the extremal points exactly and goes on from there. That sphere is usually
+	close to the sphere of all, so the solve needs about half of the passes, that it needs
+	from the box center, and the box and the k-DOP do not cost a pass of their own.<p>
+
+	The k-DOP can have 8, 14 or 26 planes: the 4 diagonals of a cube, those and the 3
+	coordinate axes, or those and the 6 diagonals of the faces of a cube. The pass is run in
+	chunks on the shared pool of <code>AsyncSolver</code>, if the set is large.<p>
+
+	If the points are stored in a compact <code>PointData</code>, the box and the k-DOP are
+	grown by its <code>errorBound()</code>, as the sphere is, so all the volumes enclose the
+	original points.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class BoundsBuilder
+{
+	/** The sizes of the k-DOP */
+	public static final int DOP8 = 8, DOP14 = 14, DOP26 = 26;
+
+	private static final int GRAIN = 16384; // points per parallel chunk at least
+
+	private int k;
+	private MetricsRecorder recorder;
+
+	/** Create a builder with a 14-DOP. */
+
+	public BoundsBuilder()
+	{
+		this(DOP14);
+	}
+
+	/**
+		Create a builder.
+
+		@param k the number of planes of the k-DOP, one of <code>DOP8, DOP14, DOP26</code>
+	*/
+
+	public BoundsBuilder(int k)
+	{
+		if (k != DOP8 && k != DOP14 && k != DOP26)
+			throw new IllegalArgumentException("A k-DOP of " + k + " planes is not available");
+		this.k = k;
+	}
+
+	/** Set a recorder, that receives the metrics of the sphere solves. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/** Build the bounds of a set of vertices. */
+
+	public Bounds bounds(Vec3[] vertex)
+	{
+		return bounds(new Vec3Points(vertex));
+	}
+
+	/** Build the bounds of points in any storage. */
+
+	public Bounds bounds(final PointData data)
+	{
+		long t0 = System.nanoTime();
+		int n = data.size();
+		if (n == 0)
+			throw new IllegalArgumentException("No points to bound");
+
+		// The axes come first, so that the first three slabs are the box.
+
+		final double[][] dir = (k == DOP26 ? Directions.EPOS26 : Directions.EPOS14);
+		final int chunks = Chunks.count(n, GRAIN);
+		final int[][] extreme = new int[chunks][];
+		final double[][] projection = new double[chunks][];
+		Chunks.run(n, GRAIN, (chunk, from, to) ->
+		{
+			extreme[chunk] = new int[dir.length*2];
+			projection[chunk] = new double[dir.length*2];
+			data.extremes(dir, from, to, extreme[chunk], projection[chunk]);
+		});
+
+		int[] e = extreme[0];
+		double[] p = projection[0];
+		for (int c = 1; c < chunks; c++)
+			for (int j = 0; j < e.length; j += 2)
+			{
+				if (projection[c][j] < p[j])
+				{
+					p[j] = projection[c][j];
+					e[j] = extreme[c][j];
+				}
+				if (projection[c][j+1] > p[j+1])
+				{
+					p[j+1] = projection[c][j+1];
+					e[j+1] = extreme[c][j+1];
+				}
+			}
+
+		// The sphere from the distinct extremal points.
+
+		int[] candidate = new int[e.length];
+		int count = 0;
+		for (int j = 0; j < e.length; j++)
+		{
+			boolean seen = false;
+			for (int c = 0; c < count && ! seen; c++)
+				seen = (candidate[c] == e[j]);
+			if (! seen)
+				candidate[count++] = e[j];
+		}
+		GeoFit geoFit = new GeoFit();
+		geoFit.recorder(recorder);
+		Bounds bounds = new Bounds();
+		bounds.sphere = geoFit.extremalSphere(data, Arrays.copyOf(candidate, count), "Created by BoundsBuilder.bounds()");
+
+		// The box and the slabs, grown by the error of the storage.
+
+		double error = data.errorBound();
+		bounds.boxMin = new Vec3(p[0]-error, p[2]-error, p[4]-error);
+		bounds.boxMax = new Vec3(p[1]+error, p[3]+error, p[5]+error);
+		int first = (k == DOP8 ? 3 : 0);
+		int slabs = k/2;
+		bounds.dir = new double[slabs][];
+		bounds.dopMin = new double[slabs];
+		bounds.dopMax = new double[slabs];
+		for (int d = 0; d < slabs; d++)
+		{
+			double[] u = dir[first+d];
+			double grow = error*Math.sqrt(u[0]*u[0]+u[1]*u[1]+u[2]*u[2]);
+			bounds.dir[d] = u.clone();
+			bounds.dopMin[d] = p[(first+d)*2]-grow;
+			bounds.dopMax[d] = p[(first+d)*2+1]+grow;
+		}
+		bounds.buildTime = (System.nanoTime()-t0)*1e-6;
+		return bounds;
+	}
+}
@@ -0,0 +1,278 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.nio.ByteBuffer;
+
+/**
+	<b>BufferPoints</b> reads the points straight from a <code>ByteBuffer</code>. With a direct 
+	or a memory mapped buffer the points stay outside of the Java heap, so a vertex buffer 
+	from native code or from a file can be solved without copying it into <code>Vec3</code>s.<p>
+
+	The points may be interleaved with other vertex data, like normals and texture coordinates.
+	The position of point <code>i</code> starts at byte <code>offset + i*stride</code> and it 
+	is three floats or three doubles in the byte order of the buffer.<p>
+
+	The buffer is only read, never modified, and its position and limit are not used after the
+	constructor. The coordinates are used as they are, so there is no error.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class BufferPoints implements PointData
+{
+	/** Type of the coordinates. */
+	public static final int FLOAT = 0, DOUBLE = 1;
+
+	private ByteBuffer buffer;
+	private int offset, stride, count, type;
+
+	/**
+		Present tightly packed float coordinates, x, y, z, x, y, z... from the current position 
+		of the buffer up to its limit.
+	*/
+
+	public BufferPoints(ByteBuffer buffer)
+	{
+		this(buffer, buffer.position(), 12, buffer.remaining()/12, FLOAT);
+	}
+
+	/**
+		@param buffer  the vertex data
+		@param offset  the byte index of the x-coordinate of the first point
+		@param stride  the bytes from one point to the next
+		@param count   the number of points
+		@param type    <code>FLOAT</code> or <code>DOUBLE</code>
+	*/
+
+	public BufferPoints(ByteBuffer buffer, int offset, int stride, int count, int type)
+	{
+		int bytes = (type == DOUBLE ? 24 : 12);
+		if (type != FLOAT && type != DOUBLE)
+			throw new IllegalArgumentException("Unknown coordinate type " + type);
+		if (offset < 0 || count < 0 || stride < bytes)
+			throw new IllegalArgumentException("Bad layout: offset " + offset + ", stride " + stride + ", count " + count);
+		if (count > 0 && offset+(long)(count-1)*stride+bytes > buffer.limit())
+			throw new IndexOutOfBoundsException("The last point is beyond the limit of the buffer");
+
+		this.buffer = buffer;
+		this.offset = offset;
+		this.stride = stride;
+		this.count = count;
+		this.type = type;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public Vec3 point(int i)
+	{
+		int b = offset+i*stride;
+		if (type == FLOAT)
+			return new Vec3(buffer.getFloat(b), buffer.getFloat(b+4), buffer.getFloat(b+8));
+		return new Vec3(buffer.getDouble(b), buffer.getDouble(b+8), buffer.getDouble(b+16));
+	}
+
+	public void bounds(double[] box)
+	{
+		double minX, maxX, minY, maxY, minZ, maxZ, x, y, z;
+		Vec3 first = point(0);
+		minX = maxX = first.x;
+		minY = maxY = first.y;
+		minZ = maxZ = first.z;
+
+		int end = offset+count*stride;
+		for (int b = offset; b < end; b += stride)
+		{
+			if (type == FLOAT)
+			{
+				x = buffer.getFloat(b);
+				y = buffer.getFloat(b+4);
+				z = buffer.getFloat(b+8);
+			}
+			else
+			{
+				x = buffer.getDouble(b);
+				y = buffer.getDouble(b+8);
+				z = buffer.getDouble(b+16);
+			}
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+			minZ = Math.min(minZ, z);
+			maxZ = Math.max(maxZ, z);
+		}
+		box[0] = minX; box[1] = minY; box[2] = minZ;
+		box[3] = maxX; box[4] = maxY; box[5] = maxZ;
+	}
+
+	public int mostDistant(double x, double y, double z, double limitDist2)
+	{
+		if (type == FLOAT)
+			return mostDistantFloat(x, y, z, limitDist2);
+		return mostDistantDouble(x, y, z, limitDist2);
+	}
+
+	private int mostDistantFloat(double x, double y, double z, double limitDist2)
+	{
+		int mostDistant = -1;
+		double r2last = limitDist2;
+		double dx, dy, dz, r2v;
+		for (int i = 0, b = offset; i < count; i++, b += stride)
+		{
+			dx = buffer.getFloat(b)-x;
+			dy = buffer.getFloat(b+4)-y;
+			dz = buffer.getFloat(b+8)-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = i;
+				r2last = r2v;
+			}
+		}
+		return mostDistant;
+	}
+
+	private int mostDistantDouble(double x, double y, double z, double limitDist2)
+	{
+		int mostDistant = -1;
+		double r2last = limitDist2;
+		double dx, dy, dz, r2v;
+		for (int i = 0, b = offset; i < count; i++, b += stride)
+		{
+			dx = buffer.getDouble(b)-x;
+			dy = buffer.getDouble(b+8)-y;
+			dz = buffer.getDouble(b+16)-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = i;
+				r2last = r2v;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int mostDistant(double x, double y, double z, int from, int to, double stopDist2)
+	{
+		int mostDistant = -1;
+		double r2last = -1.0;
+		double dx, dy, dz, r2v;
+		for (int i = from, b = offset+from*stride; i < to; i++, b += stride)
+		{
+			if (type == FLOAT)
+			{
+				dx = buffer.getFloat(b)-x;
+				dy = buffer.getFloat(b+4)-y;
+				dz = buffer.getFloat(b+8)-z;
+			}
+			else
+			{
+				dx = buffer.getDouble(b)-x;
+				dy = buffer.getDouble(b+8)-y;
+				dz = buffer.getDouble(b+16)-z;
+			}
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = i;
+				r2last = r2v;
+				if (r2v > stopDist2)
+					break;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int[] farthest(double x, double y, double z, int k, double limitDist2)
+	{
+		Farthest far = new Farthest(k, limitDist2);
+		double dx, dy, dz, r2v;
+		for (int i = 0, b = offset; i < count; i++, b += stride)
+		{
+			if (type == FLOAT)
+			{
+				dx = buffer.getFloat(b)-x;
+				dy = buffer.getFloat(b+4)-y;
+				dz = buffer.getFloat(b+8)-z;
+			}
+			else
+			{
+				dx = buffer.getDouble(b)-x;
+				dy = buffer.getDouble(b+8)-y;
+				dz = buffer.getDouble(b+16)-z;
+			}
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > far.threshold)
+				far.offer(i, r2v);
+		}
+		return far.indices();
+	}
+
+	public void extremes(double[][] dir, int from, int to, int[] extreme, double[] projection)
+	{
+		for (int d = 0; d < dir.length; d++)
+		{
+			projection[d*2] = Double.POSITIVE_INFINITY;
+			projection[d*2+1] = Double.NEGATIVE_INFINITY;
+		}
+		double x, y, z, s;
+		for (int i = from, b = offset+from*stride; i < to; i++, b += stride)
+		{
+			if (type == FLOAT)
+			{
+				x = buffer.getFloat(b);
+				y = buffer.getFloat(b+4);
+				z = buffer.getFloat(b+8);
+			}
+			else
+			{
+				x = buffer.getDouble(b);
+				y = buffer.getDouble(b+8);
+				z = buffer.getDouble(b+16);
+			}
+			for (int d = 0; d < dir.length; d++)
+			{
+				s = dir[d][0]*x+dir[d][1]*y+dir[d][2]*z;
+				if (s < projection[d*2])
+				{
+					projection[d*2] = s;
+					extreme[d*2] = i;
+				}
+				if (s > projection[d*2+1])
+				{
+					projection[d*2+1] = s;
+					extreme[d*2+1] = i;
+				}
+			}
+		}
+	}
+
+	public void hash(PointHash hash)
+	{
+		int end = offset+count*stride;
+		for (int b = offset; b < end; b += stride)
+		{
+			if (type == FLOAT)
+				hash.add(buffer.getFloat(b), buffer.getFloat(b+4), buffer.getFloat(b+8));
+			else
+				hash.add(buffer.getDouble(b), buffer.getDouble(b+8), buffer.getDouble(b+16));
+		}
+	}
+
+	public double errorBound()
+	{
+		return 0.0;
+	}
+}
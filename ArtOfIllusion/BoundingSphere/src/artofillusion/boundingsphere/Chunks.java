@@ -0,0 +1,119 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+	<b>Chunks</b> splits a loop over <code>n</code> items into chunks, that are run on the
+	shared pool of <code>AsyncSolver</code>. The calling thread takes chunks too and the pool 
+	threads only take the chunks, that are still left, when they start. So the loop always 
+	finishes, even if it is called from a pool thread and the pool is busy.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+final class Chunks
+{
+	/** The work on one chunk. */
+
+	interface Task
+	{
+		void run(int chunk, int from, int to);
+	}
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private Chunks()
+	{}
+
+	/** The number of chunks for <code>n</code> items with at least <code>grain</code> items each. */
+
+	static int count(int n, int grain)
+	{
+		if (THREADS < 2)
+			return 1;
+		return (int)Math.max(1, Math.min(THREADS*4L, ((long)n+grain-1)/grain));
+	}
+
+	/** 
+		Run the task on <code>count(n, grain)</code> chunks. The chunks are numbered from 0 and 
+		have equal sizes, except for the last one. Returns when all are done.
+	*/
+
+	static void run(int n, int grain, final Task task)
+	{
+		final int chunks = count(n, grain);
+		final int step = (int)(((long)n+chunks-1)/chunks);
+		final int size = n;
+		if (chunks == 1)
+		{
+			task.run(0, 0, n);
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(chunks);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Runnable worker = new Runnable()
+		{
+			public void run()
+			{
+				int c;
+				while ((c = next.getAndIncrement()) < chunks)
+				{
+					try
+					{
+						int from = (int)Math.min(size, (long)c*step);
+						task.run(c, from, (int)Math.min(size, (long)from+step));
+					}
+					catch (Throwable e)
+					{
+						failure.compareAndSet(null, e);
+					}
+					finally
+					{
+						done.countDown();
+					}
+				}
+			}
+		};
+
+		ExecutorService pool = AsyncSolver.sharedPool();
+		for (int w = 1; w < Math.min(chunks, THREADS); w++)
+			pool.execute(worker);
+		worker.run();
+
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				done.await();
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		Throwable e = failure.get();
+		if (e instanceof RuntimeException)
+			throw (RuntimeException)e;
+		if (e instanceof Error)
+			throw (Error)e;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+	<b>Containment</b> checks, if a set of points fits in a known sphere, for example a sphere
+	read from a cache or one, that was fitted before an edit. It costs at most one pass and
+	no solving, so it is a fraction of the cost of fitting the sphere again.<p>
+
+	<code>check()</code> stops at the first point, that is found outside, and is the one to use,
+	when only the answer is needed. <code>worst()</code> reads all the points and reports the
+	one furthest from the center, so it also tells, how much room is left. Large sets are read
+	in chunks on the shared pool of <code>AsyncSolver</code>. When a chunk finds a point
+	outside, the others stop too.<p>
+
+	A point fits, if its distance from the center is at most the radius plus the tolerance.
+	If the points are in a compact <code>PointData</code>, the original points may be further
+	out by its <code>errorBound()</code> and a stored point only fits, if it is inside by that
+	much. The reported distances are the ones of the stored points. The radius of a solved 
+	sphere is rounded, so its support points may be outside it by the last bits. A tolerance 
+	of about <code>1e-12</code> times the radius keeps them from failing the check.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class Containment
+{
+	private static final int GRAIN = 16384; // points per parallel chunk at least
+
+	/** Do all the points fit in. */
+	public boolean fits;
+
+	/** The point furthest from the center of the ones, that were read, or -1 if there are none. */
+	public int index;
+
+	/**
+		How far the point at <code>index</code> is outside the sphere. A negative value is
+		the room left between it and the surface.
+	*/
+	public double excess;
+
+	/** The number of points, that were read. */
+	public int checked;
+
+	/** Were all the points read. If so, the point at <code>index</code> is the furthest of all. */
+	public boolean complete;
+
+	/** The time of the check. */
+	public double checkTime;
+
+	/** Preferably <code>'millisecond'</code> */
+	public String timeUnit;
+
+	/** Check the points, stopping at the first one outside. */
+
+	public static Containment check(BoundingSphere sphere, Vec3[] vertex, double tolerance)
+	{
+		return scan(sphere, new Vec3Points(vertex), tolerance, true);
+	}
+
+	/** Check the points, stopping at the first one outside. */
+
+	public static Containment check(BoundingSphere sphere, PointData data, double tolerance)
+	{
+		return scan(sphere, data, tolerance, true);
+	}
+
+	/** Check all the points and find the one furthest from the center. */
+
+	public static Containment worst(BoundingSphere sphere, Vec3[] vertex, double tolerance)
+	{
+		return scan(sphere, new Vec3Points(vertex), tolerance, false);
+	}
+
+	/** Check all the points and find the one furthest from the center. */
+
+	public static Containment worst(BoundingSphere sphere, PointData data, double tolerance)
+	{
+		return scan(sphere, data, tolerance, false);
+	}
+
+	private static Containment scan(BoundingSphere sphere, final PointData data, double tolerance, final boolean stopAtFirst)
+	{
+		long t0 = System.nanoTime();
+		final int n = data.size();
+		final double cx = sphere.center.x, cy = sphere.center.y, cz = sphere.center.z;
+		double limit = sphere.radius+tolerance-data.errorBound();
+		final double limit2 = (limit < 0.0 ? -1.0 : limit*limit); // any point is outside a negative limit
+		final double stop2 = (stopAtFirst ? limit2 : Double.POSITIVE_INFINITY);
+
+		final int chunks = Chunks.count(n, GRAIN);
+		final int[] far = new int[chunks], read = new int[chunks];
+		final double[] far2 = new double[chunks];
+		final AtomicBoolean escaped = new AtomicBoolean();
+		Chunks.run(n, GRAIN, (chunk, from, to) ->
+		{
+			int f = -1, i = from;
+			double f2 = -1.0;
+			while (i < to)
+			{
+				// Look at the other chunks between blocks.
+
+				if (stopAtFirst && escaped.get())
+					break;
+				int block = Math.min(to, i+1024);
+				int b = data.mostDistant(cx, cy, cz, i, block, stop2);
+				Vec3 p = data.point(b);
+				double dx = p.x-cx, dy = p.y-cy, dz = p.z-cz;
+				double d2 = dx*dx+dy*dy+dz*dz;
+				if (d2 > f2)
+				{
+					f2 = d2;
+					f = b;
+				}
+				if (d2 > stop2)
+				{
+					// The scan stopped at the first point outside.
+
+					escaped.set(true);
+					i = b+1;
+					break;
+				}
+				i = block;
+			}
+			far[chunk] = f;
+			far2[chunk] = f2;
+			read[chunk] = i-from;
+		});
+
+		Containment result = new Containment();
+		result.index = -1;
+		double worst2 = -1.0;
+		for (int c = 0; c < chunks; c++)
+		{
+			result.checked += read[c];
+			if (far2[c] > worst2)
+			{
+				worst2 = far2[c];
+				result.index = far[c];
+			}
+		}
+		result.fits = (worst2 <= limit2);
+		result.complete = (result.checked == n);
+		result.excess = (result.index < 0 ? -sphere.radius : Math.sqrt(worst2)-sphere.radius);
+		result.checkTime = (System.nanoTime()-t0)*1e-6;
+		result.timeUnit = "millisecond";
+		return result;
+	}
+
+	/** Get a verbal description of the result */
+
+	@Override
+	public String toString()
+	{
+		return "Containment[" + (fits ? "Fits" : "Does not fit") + " Index: " + index + " Excess: " + excess +
+		       " Checked: " + checked + (complete ? " (all)" : "") + "]";
+	}
+}
@@ -0,0 +1,66 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+/**
+	<b>Directions</b> are the fixed sets of directions, along which the extremal points of a 
+	set are searched for. They are the ones of the EPOS method of Larsson: the coordinate axes, 
+	the diagonals of a cube and the diagonals of its faces. The directions are not normalized, 
+	as only the order of the projections on each is used.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+final class Directions
+{
+	/** The 3 coordinate axes, 6 extremal points. */
+	static final double[][] AXES = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+
+	/** The axes and the 4 cube diagonals, 14 extremal points. */
+	static final double[][] EPOS14 = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1},
+	                                  {1, 1, 1}, {1, 1, -1}, {1, -1, 1}, {1, -1, -1}};
+
+	/** The axes, the cube diagonals and the 6 face diagonals, 26 extremal points. */
+	static final double[][] EPOS26 = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1},
+	                                  {1, 1, 1}, {1, 1, -1}, {1, -1, 1}, {1, -1, -1},
+	                                  {1, 1, 0}, {1, -1, 0}, {1, 0, 1}, {1, 0, -1}, {0, 1, 1}, {0, 1, -1}};
+
+	/** The 49 directions with coordinates from -2 to 2, 98 extremal points. */
+	static final double[][] EPOS98 = lattice(2);
+
+	private Directions()
+	{}
+
+	/** 
+		The directions to the integer points of a cube from <code>-k</code> to <code>k</code>, 
+		leaving out the opposite and the parallel ones. 
+	*/
+
+	private static double[][] lattice(int k)
+	{
+		java.util.ArrayList<double[]> dir = new java.util.ArrayList<double[]>();
+		for (int a = 0; a <= k; a++)
+			for (int b = -k; b <= k; b++)
+				for (int c = -k; c <= k; c++)
+				{
+					if (a == 0 && (b < 0 || (b == 0 && c <= 0)))
+						continue; // zero or the opposite of another
+					if (gcd(a, gcd(Math.abs(b), Math.abs(c))) != 1)
+						continue; // parallel to a shorter one
+					dir.add(new double[] {a, b, c});
+				}
+		return dir.toArray(new double[dir.size()][]);
+	}
+
+	private static int gcd(int a, int b)
+	{
+		return (b == 0 ? a : gcd(b, a % b));
+	}
+}
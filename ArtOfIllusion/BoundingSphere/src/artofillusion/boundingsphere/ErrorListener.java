@@ -0,0 +1,24 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+/**
+	An <b>ErrorListener</b> is informed of the errors, that a service running in threads of 
+	its own can not throw to its caller, like a failed connection or solve in 
+	<code>SphereServer</code>. It may be called from several threads at the same time.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public interface ErrorListener
+{
+	/** Called, when an error has occurred. */
+	public void errorOccurred(Throwable error);
+}
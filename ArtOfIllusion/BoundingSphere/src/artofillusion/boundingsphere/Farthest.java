@@ -0,0 +1,88 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+/**
+	<b>Farthest</b> collects the points furthest from a center for <code>PointData.farthest()</code>, 
+	keeping them in a heap, that has the nearest of the picked ones on top. The storage reads its
+	points in its own form and only offers the ones beyond the <code>threshold</code>.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+final class Farthest
+{
+	private int[] index;
+	private double[] d2;
+	private int count;
+
+	/** The squared distance, that a point must exceed to be picked. It grows, when the heap is full. */
+	double threshold;
+
+	/** Collect up to <code>k</code> points further than <code>Math.sqrt(limitDist2)</code>. */
+
+	Farthest(int k, double limitDist2)
+	{
+		index = new int[k];
+		d2 = new double[k];
+		threshold = (k > 0 ? limitDist2 : Double.POSITIVE_INFINITY);
+	}
+
+	/** Pick the point <code>i</code>, whose squared distance <code>d</code> is above the threshold. */
+
+	void offer(int i, double d)
+	{
+		int k = index.length;
+		if (count < k)
+		{
+			int h = count++;
+			while (h > 0 && d2[(h-1)/2] > d)
+			{
+				d2[h] = d2[(h-1)/2];
+				index[h] = index[(h-1)/2];
+				h = (h-1)/2;
+			}
+			d2[h] = d;
+			index[h] = i;
+		}
+		else
+		{
+			int h = 0;
+			while (true)
+			{
+				int child = 2*h+1;
+				if (child >= count)
+					break;
+				if (child+1 < count && d2[child+1] < d2[child])
+					child++;
+				if (d2[child] >= d)
+					break;
+				d2[h] = d2[child];
+				index[h] = index[child];
+				h = child;
+			}
+			d2[h] = d;
+			index[h] = i;
+		}
+		if (count == k)
+			threshold = d2[0];
+	}
+
+	/** The indices of the picked points. The order is not sorted. */
+
+	int[] indices()
+	{
+		if (count == index.length)
+			return index;
+		int[] found = new int[count];
+		System.arraycopy(index, 0, found, 0, count);
+		return found;
+	}
+}
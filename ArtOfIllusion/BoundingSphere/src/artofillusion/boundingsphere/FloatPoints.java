@@ -0,0 +1,189 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+
+/**
+	<b>FloatPoints</b> keeps the points as single precision coordinates in one interleaved
+	array, x, y, z, x, y, z... A pass over the data reads 12 bytes per point, instead of 
+	the 24 bytes of three doubles and the object overhead of a <code>Vec3</code>.<p>
+
+	The distances are calculated in double precision from the stored floats. When the points 
+	are given as floats, nothing is lost. When they are converted from doubles, the largest
+	rounding error is measured during the conversion.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class FloatPoints implements PointData
+{
+	private float[] xyz;
+	private double error;
+
+	/** Use the given coordinates as they are. The array is not copied. */
+
+	public FloatPoints(float[] xyz)
+	{
+		this.xyz = xyz;
+		error = 0.0;
+	}
+
+	/** Convert the points to single precision. */
+
+	public FloatPoints(Vec3[] vertex)
+	{
+		xyz = new float[vertex.length*3];
+		double e2 = 0.0, dx, dy, dz;
+		for (int i = 0, j = 0; i < vertex.length; i++, j += 3)
+		{
+			xyz[j]   = (float)vertex[i].x;
+			xyz[j+1] = (float)vertex[i].y;
+			xyz[j+2] = (float)vertex[i].z;
+
+			// The differences are exact, as a float is within a factor of 2 of the double.
+
+			dx = vertex[i].x-xyz[j];
+			dy = vertex[i].y-xyz[j+1];
+			dz = vertex[i].z-xyz[j+2];
+			e2 = Math.max(e2, dx*dx+dy*dy+dz*dz);
+		}
+		error = (e2 > 0.0 ? Math.nextUp(Math.sqrt(e2)*(1.0+1e-15)) : 0.0);
+	}
+
+	public int size()
+	{
+		return xyz.length/3;
+	}
+
+	public Vec3 point(int i)
+	{
+		return new Vec3(xyz[i*3], xyz[i*3+1], xyz[i*3+2]);
+	}
+
+	public void bounds(double[] box)
+	{
+		float minX, maxX, minY, maxY, minZ, maxZ;
+		minX = maxX = xyz[0];
+		minY = maxY = xyz[1];
+		minZ = maxZ = xyz[2];
+
+		for (int j = 0; j < xyz.length; j += 3)
+		{
+			minX = Math.min(minX, xyz[j]);
+			maxX = Math.max(maxX, xyz[j]);
+			minY = Math.min(minY, xyz[j+1]);
+			maxY = Math.max(maxY, xyz[j+1]);
+			minZ = Math.min(minZ, xyz[j+2]);
+			maxZ = Math.max(maxZ, xyz[j+2]);
+		}
+		box[0] = minX; box[1] = minY; box[2] = minZ;
+		box[3] = maxX; box[4] = maxY; box[5] = maxZ;
+	}
+
+	public int mostDistant(double x, double y, double z, double limitDist2)
+	{
+		int mostDistant = -1;
+		double r2last = limitDist2;
+		double dx, dy, dz, r2v;
+		for (int j = 0; j < xyz.length; j += 3)
+		{
+			dx = xyz[j]-x;
+			dy = xyz[j+1]-y;
+			dz = xyz[j+2]-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = j/3;
+				r2last = r2v;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int mostDistant(double x, double y, double z, int from, int to, double stopDist2)
+	{
+		int mostDistant = -1;
+		double r2last = -1.0;
+		double dx, dy, dz, r2v;
+		for (int j = from*3; j < to*3; j += 3)
+		{
+			dx = xyz[j]-x;
+			dy = xyz[j+1]-y;
+			dz = xyz[j+2]-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = j/3;
+				r2last = r2v;
+				if (r2v > stopDist2)
+					break;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int[] farthest(double x, double y, double z, int k, double limitDist2)
+	{
+		Farthest far = new Farthest(k, limitDist2);
+		double dx, dy, dz, r2v;
+		for (int j = 0; j < xyz.length; j += 3)
+		{
+			dx = xyz[j]-x;
+			dy = xyz[j+1]-y;
+			dz = xyz[j+2]-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > far.threshold)
+				far.offer(j/3, r2v);
+		}
+		return far.indices();
+	}
+
+	public void extremes(double[][] dir, int from, int to, int[] extreme, double[] projection)
+	{
+		for (int d = 0; d < dir.length; d++)
+		{
+			projection[d*2] = Double.POSITIVE_INFINITY;
+			projection[d*2+1] = Double.NEGATIVE_INFINITY;
+		}
+		double x, y, z, s;
+		for (int i = from, j = from*3; i < to; i++, j += 3)
+		{
+			x = xyz[j];
+			y = xyz[j+1];
+			z = xyz[j+2];
+			for (int d = 0; d < dir.length; d++)
+			{
+				s = dir[d][0]*x+dir[d][1]*y+dir[d][2]*z;
+				if (s < projection[d*2])
+				{
+					projection[d*2] = s;
+					extreme[d*2] = i;
+				}
+				if (s > projection[d*2+1])
+				{
+					projection[d*2+1] = s;
+					extreme[d*2+1] = i;
+				}
+			}
+		}
+	}
+
+	public void hash(PointHash hash)
+	{
+		for (int j = 0; j < xyz.length; j += 3)
+			hash.add(xyz[j], xyz[j+1], xyz[j+2]);
+	}
+
+	public double errorBound()
+	{
+		return error;
+	}
+}
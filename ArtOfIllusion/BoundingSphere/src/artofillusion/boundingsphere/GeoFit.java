@@ -11,6 +11,10 @@ import artofillusion.*;
 import artofillusion.math.*;
 import artofillusion.object.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
 
 /**
 	<b>GeoFit</b> is an algorithm to define a minimal bounding sphere for a set of points 
@@ -27,25 +31,98 @@ import java.util.ArrayList;
 public class GeoFit
 {
 	private double radius2; // Squared radius
+
+	// Points outside the sphere by less than this relative amount of the squared radius,
+	// plus the rounding of the coordinates, are taken as lying on the surface. Without it,
+	// rounding errors let points, that are on a common circle or sphere, replace each other
+	// as supports without an end.
+
+	private static final double SURFACE = 1e-13;
+
+	// Rounds of growing the sample and the points added to it on each round.
+
+	private static final int SAMPLE_ROUNDS = 4, SAMPLE_OUTLIERS = 64;
+
+	// Objects with more points than this are reduced to their hull candidates, 
+	// when they are used by more than one instance.
+
+	private static final int INSTANCE_POINTS = 256;
 	private Vec3 center, exo;
 	private int fit, passes;
 	private ArrayList<Vec3> supports;
+	private ArrayList<Integer> supportIndices;
+	private int lastIndex, exoIndex; // indices of the last found most distant point and of exo
 	private long t0, t1; // nanoseconds
+
+	// The budget of the anytime solver and the best enclosing sphere found so far.
+
+	private boolean limited;
+	private long deadline; // nanoseconds
+	private int passLimit;
+	private double epsilon2; // squared 1+epsilon of the relative stop
+	private SphereListener listener;
+	private Vec3 boundCenter, boundSupport;
+	private int boundSupportIndex;
+	private double boundRadius2;
+	private volatile boolean cancelled;
+	private SolverMetrics metrics;
+	private MetricsRecorder recorder;
+	private SolveEvent event;
 	
 	/** Create the solver. */
 	
 	public GeoFit()
-	{}
+	{
+		metrics = new SolverMetrics("GeoFit");
+	}
+
+	/** Set a recorder, that receives the metrics of every solve. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/**
+		Stop the solver. A solve, that is running in another thread, stops at the start of 
+		its next pass by throwing a <code>CancellationException</code>. If no solve is running, 
+		the next one stops at once.
+	*/
+
+	public void cancel()
+	{
+		cancelled = true;
+	}
 	
 	/** Calculate a bounding sphere for a set of vertices. */
 	
 	public BoundingSphere boundingSphere(Vec3[] vertex)
 	{
-		passes = 0;
-		calculateParameters(vertex);
+		return boundingSphere(new Vec3Points(vertex));
+	}
+
+	/**
+		Calculate a bounding sphere for points in any storage. If the storage has lost 
+		accuracy, the radius is grown by its error bound, so that the sphere encloses the 
+		original points. Such a sphere is no longer minimal and the fit is <code>NON_MINIMAL</code>.
+	*/
+
+	public BoundingSphere boundingSphere(PointData data)
+	{
+		startSolve("GeoFit");
+		calculateParameters(data);
+		double inflate = data.errorBound();
 		
-		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2), fit);
-		bou.error = error();
+		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2)+inflate, inflate > 0.0 ? BoundingSphere.NON_MINIMAL : fit);
+		bou.error = error()+inflate;
 		bou.solverTime = (t1-t0)*1e-6;
 		bou.timeUnit = "millisecond";
 		bou.passes = passes;
@@ -54,7 +131,387 @@ public class GeoFit
 		bou.supportPositions = new ArrayList<Vec3>();
 		for (Vec3 s : supports)
 			bou.supportPositions.add(new Vec3(s));
+		bou.supportIndices = new ArrayList<Integer>(supportIndices);
 
+		finishSolve(bou);
+		return bou;
+	}
+
+	/**
+		Calculate a bounding sphere for a set of vertices within a time and a pass budget.
+		The result is always an enclosing sphere. If the solver completes within the budget
+		the fit is <code>EXACT</code>, otherwise the smallest enclosing sphere found before
+		running out of the budget is returned as <code>NON_MINIMAL</code>.<p>
+
+		The first two passes are the ones of <code>fastSphere()</code> and they are always made.
+
+		@param vertex     the points to enclose
+		@param timeLimit  the time budget in milliseconds
+		@param passLimit  the maximum number of passes through the data
+	*/
+
+	public BoundingSphere boundingSphere(Vec3[] vertex, double timeLimit, int passLimit)
+	{
+		return boundingSphere(vertex, timeLimit, passLimit, null);
+	}
+
+	/**
+		Calculate a bounding sphere for a set of vertices within a time and a pass budget.
+		Each time a tighter enclosing sphere is found, it is reported to the listener.
+		
+		@param vertex     the points to enclose
+		@param timeLimit  the time budget in milliseconds
+		@param passLimit  the maximum number of passes through the data
+		@param listener   receives the intermediate spheres, may be <code>null</code>
+	*/
+
+	public BoundingSphere boundingSphere(Vec3[] vertex, double timeLimit, int passLimit, SphereListener listener)
+	{
+		return boundingSphere(new Vec3Points(vertex), 0.0, timeLimit, passLimit, listener);
+	}
+
+	/**
+		Calculate a bounding sphere, that is at most <code>1+epsilon</code> times the size of 
+		the minimal one, within a time and a pass budget.<p>
+
+		During the completing phase the current candidate is the minimal sphere of some of 
+		the points, so its radius is a lower limit of the minimal radius, and the distance to 
+		the most distant point is an upper limit. The solve stops, as soon as the two are 
+		within <code>epsilon</code>, and the enclosing sphere is returned as <code>NON_MINIMAL</code>.
+		With <code>epsilon</code> 0 only the budget stops the solve.
+
+		@param data       the points to enclose
+		@param epsilon    the allowed relative excess of the radius
+		@param timeLimit  the time budget in milliseconds
+		@param passLimit  the maximum number of passes through the data
+		@param listener   receives the intermediate spheres, may be <code>null</code>
+	*/
+
+	public BoundingSphere boundingSphere(PointData data, double epsilon, double timeLimit, int passLimit, SphereListener listener)
+	{
+		limited = true;
+		deadline = System.nanoTime()+(long)Math.min(timeLimit*1e6, Long.MAX_VALUE/2);
+		this.passLimit = passLimit;
+		this.listener = listener;
+		epsilon2 = (1.0+epsilon)*(1.0+epsilon);
+		try
+		{
+			BoundingSphere bou = boundingSphere(data);
+			if (fit == BoundingSphere.NON_MINIMAL)
+				bou.metatext = (epsilon > 0.0 ? "Created by GeoFit.boundingSphere() within epsilon or budget" 
+				                              : "Created by GeoFit.boundingSphere() within budget");
+			return bou;
+		}
+		finally
+		{
+			limited = false;
+			this.listener = null;
+			epsilon2 = 0.0;
+		}
+	}
+
+	/**
+		Update a sphere after some of the vertices have moved, for example by editing or by
+		skinning. The <code>previous</code> sphere must have been fitted to the same vertices 
+		and have its <code>supportIndices</code>.<p>
+
+		If none of the moved vertices is outside the previous sphere and none of the supports
+		has moved inward, the sphere stays as it is and no pass through the data is needed. 
+		If some moved out, the sphere grows: the solve is continued from the previous supports 
+		and the vertex furthest out, which skips the initializing passes. If a support has moved
+		out, the sphere of the remaining supports is solved and one pass finds the vertices 
+		outside it. Only if a support has moved inward, the sphere may have to shrink and a 
+		full solve is made.
+
+		@param previous  the sphere of the vertices before they moved
+		@param vertex    the vertices at their current positions
+		@param modified  the indices of the vertices, that have moved
+	*/
+
+	public BoundingSphere update(BoundingSphere previous, Vec3[] vertex, int[] modified)
+	{
+		return update(previous, new Vec3Points(vertex), modified);
+	}
+
+	/**
+		Update a sphere after some of the points have moved. See 
+		<code>update(BoundingSphere, Vec3[], int[])</code>.
+	*/
+
+	public BoundingSphere update(BoundingSphere previous, PointData data, int[] modified)
+	{
+		ArrayList<Integer> prevIndices = previous.supportIndices;
+		if (prevIndices == null || prevIndices.size() < 2)
+			return boundingSphere(data);
+
+		startSolve("GeoFit.update");
+		t0 = System.nanoTime();
+		metrics.points = data.size();
+		boundRadius2 = Double.POSITIVE_INFINITY;
+		double inflate = data.errorBound();
+		double r = previous.radius-inflate;
+
+		center = new Vec3(previous.center);
+		radius2 = r*r;
+		supports = new ArrayList<Vec3>();
+		supportIndices = new ArrayList<Integer>(prevIndices);
+		for (int s : prevIndices)
+		{
+			if (s >= data.size())
+				return boundingSphere(data);
+			supports.add(data.point(s));
+		}
+
+		// Look for supports, that moved inward, and for the vertex furthest out.
+
+		exo = null;
+		exoIndex = -1;
+		double r2exo = radius2+slack2(center, radius2), r2m;
+		boolean dropped = false;
+		for (int m : modified)
+		{
+			r2m = center.distance2(data.point(m));
+			int k = supportIndices.indexOf(m);
+			if (k >= 0)
+			{
+				if (r2m < radius2-slack2(center, radius2))
+					return boundingSphere(data);
+
+				// A support, that moved out, is no longer on the sphere. 
+				// It is an ordinary point now and may be found again.
+
+				if (r2m > radius2+slack2(center, radius2))
+				{
+					supports.remove(k);
+					supportIndices.remove(k);
+					dropped = true;
+				}
+			}
+			if (r2m > r2exo)
+			{
+				r2exo = r2m;
+				exoIndex = m;
+			}
+		}
+		if (supports.size() < 2)
+			return boundingSphere(data);
+
+		// Without the dropped support the previous sphere is no longer defined by its supports. 
+		// The sphere of the remaining ones is smaller, so also vertices, that did not move, may 
+		// be outside it. Solve them exactly and look for those from there.
+
+		if (dropped)
+		{
+			Vec3[] point = supports.toArray(new Vec3[supports.size()]);
+			BoundingSphere seed = new GeoFit().boundingSphere(point);
+			metrics.pointsScanned += seed.metrics.pointsScanned;
+			ArrayList<Integer> indices = new ArrayList<Integer>();
+			for (int s : seed.supportIndices)
+				indices.add(supportIndices.get(s));
+			seed.supportIndices = indices;
+			return continueFrom(seed, data, "Created by GeoFit.update()");
+		}
+
+		if (exoIndex < 0)
+			fit = previous.fit;
+		else
+		{
+			exo = data.point(exoIndex);
+			complete(data);
+		}
+		return seededResult(inflate, "Created by GeoFit.update()");
+	}
+
+	/**
+		Continue a solve from a <code>seed</code> sphere, that was fitted to a part of the 
+		data. Its <code>supportIndices</code> must point to the same points in 
+		<code>data</code>. One pass checks, if the seed encloses all, and if not, the
+		completing phase goes on from there. Since the smallest sphere of a part can not be 
+		larger than the one of the whole, a seed that encloses all is the result.
+	*/
+
+	BoundingSphere resume(BoundingSphere seed, PointData data)
+	{
+		startSolve("GeoFit.resume");
+		t0 = System.nanoTime();
+		return continueFrom(seed, data, "Created by GeoFit.resume()");
+	}
+
+	/**
+		Continue a solve from the exact sphere of the <code>candidate</code> points, that the
+		caller found in a pass of its own, like the extremal points along a few directions.
+		That pass replaces the box center pass and is counted as the first one. The sphere of
+		the extremal points is usually close to the sphere of all, so fewer supports have to
+		be changed, than when starting from the box center.
+	*/
+
+	BoundingSphere extremalSphere(PointData data, int[] candidate, String metatext)
+	{
+		startSolve("GeoFit.extremal");
+		t0 = System.nanoTime();
+		passes = 1;
+		metrics.pointsScanned += data.size();
+
+		Vec3[] point = new Vec3[candidate.length];
+		for (int k = 0; k < candidate.length; k++)
+			point[k] = data.point(candidate[k]);
+		BoundingSphere seed = new GeoFit().boundingSphere(point);
+		metrics.pointsScanned += seed.metrics.pointsScanned;
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+		for (int s : seed.supportIndices)
+			indices.add(candidate[s]);
+		seed.supportIndices = indices;
+		return continueFrom(seed, data, metatext);
+	}
+
+	/**
+		Calculate a bounding sphere for a large set of points by solving a sample first. 
+		See <code>sampledSphere(PointData, int)</code>.
+	*/
+
+	public BoundingSphere sampledSphere(Vec3[] vertex, int sampleSize)
+	{
+		return sampledSphere(new Vec3Points(vertex), sampleSize);
+	}
+
+	/**
+		Calculate a bounding sphere for a large set of points by solving a sample first.<p>
+
+		The points are divided into <code>sampleSize</code> strata of consecutive indices and
+		one random point is taken from each. The sample is small enough to stay in the cache, 
+		so its exact sphere is cheap. Each pass over the data then picks the points furthest 
+		outside the sphere of the sample. They are added to the sample and it is solved again,
+		until a pass finds no point outside. As the sphere of a sample can not be larger than 
+		the sphere of all the points, it then is the sphere of all, with the same <code>fit</code>.
+		Typically one or two passes over the data are made. If the sample keeps missing points 
+		after a few rounds, the completing phase goes on from its supports.
+
+		@param data        the points to enclose
+		@param sampleSize  the number of points in the sample
+	*/
+
+	public BoundingSphere sampledSphere(PointData data, int sampleSize)
+	{
+		int n = data.size();
+		if (sampleSize < 2 || n <= sampleSize*2)
+			return boundingSphere(data);
+
+		startSolve("GeoFit.sampled");
+		t0 = System.nanoTime();
+
+		// Sample the stored points as they are, so that the error bound is only added once.
+
+		Random random = new Random(n);
+		Vec3[] sample = new Vec3[sampleSize];
+		int[] sampleIndex = new int[sampleSize];
+		for (int k = 0; k < sampleSize; k++)
+		{
+			int from = (int)((long)k*n/sampleSize), to = (int)((long)(k+1)*n/sampleSize);
+			sampleIndex[k] = from+random.nextInt(to-from);
+			sample[k] = data.point(sampleIndex[k]);
+		}
+		GeoFit sub = new GeoFit();
+		BoundingSphere seed = null;
+		for (int round = 0; round <= SAMPLE_ROUNDS; round++)
+		{
+			seed = sub.boundingSphere(sample);
+			metrics.pointsScanned += seed.metrics.pointsScanned;
+			if (round == SAMPLE_ROUNDS)
+				break;
+
+			// One pass over the data. The points within the rounding errors of the surface are 
+			// on it, the ones further out are added to the sample.
+
+			passes++;
+			checkCancelled();
+			metrics.pointsScanned += n;
+			double r2 = 0.0;
+			for (int s : seed.supportIndices)
+				r2 = Math.max(r2, seed.center.distance2(sample[s]));
+			int[] far = data.farthest(seed.center.x, seed.center.y, seed.center.z, SAMPLE_OUTLIERS, r2-slack2(seed.center, r2));
+			int outside = 0;
+			double r2far = r2;
+			for (int i = 0; i < far.length; i++)
+			{
+				double d2 = seed.center.distance2(data.point(far[i]));
+				r2far = Math.max(r2far, d2);
+				if (d2 > r2+slack2(seed.center, r2))
+					far[outside++] = far[i];
+			}
+			if (outside == 0)
+			{
+				center = new Vec3(seed.center);
+				radius2 = r2far;
+				supports = new ArrayList<Vec3>();
+				supportIndices = new ArrayList<Integer>();
+				for (int s : seed.supportIndices)
+				{
+					supports.add(sample[s]);
+					supportIndices.add(sampleIndex[s]);
+				}
+				fit = seed.fit;
+				return seededResult(data.errorBound(), "Created by GeoFit.sampledSphere()");
+			}
+			sample = Arrays.copyOf(sample, sample.length+outside);
+			sampleIndex = Arrays.copyOf(sampleIndex, sampleIndex.length+outside);
+			for (int i = 0; i < outside; i++)
+			{
+				sampleIndex[sample.length-outside+i] = far[i];
+				sample[sample.length-outside+i] = data.point(far[i]);
+			}
+		}
+
+		ArrayList<Integer> indices = new ArrayList<Integer>();
+		for (int s : seed.supportIndices)
+			indices.add(sampleIndex[s]);
+		seed.supportIndices = indices;
+		return continueFrom(seed, data, "Created by GeoFit.sampledSphere()");
+	}
+
+	/** Go on from the supports of the seed. */
+
+	private BoundingSphere continueFrom(BoundingSphere seed, PointData data, String metatext)
+	{
+		metrics.points = data.size();
+		boundRadius2 = Double.POSITIVE_INFINITY;
+
+		center = new Vec3(seed.center);
+		radius2 = 0.0;
+		supports = new ArrayList<Vec3>();
+		supportIndices = new ArrayList<Integer>(seed.supportIndices);
+		for (int s : supportIndices)
+		{
+			supports.add(data.point(s));
+			radius2 = Math.max(radius2, center.distance2(data.point(s)));
+		}
+		exo = onSurface(mostDistant(center, radius2, data));
+		exoIndex = lastIndex;
+		fit = seed.fit;
+		if (exo != null)
+			complete(data);
+		return seededResult(data.errorBound(), metatext);
+	}
+
+	/** The result of a solve, that was started from a previous sphere. */
+
+	private BoundingSphere seededResult(double inflate, String metatext)
+	{
+		if (inflate > 0.0)
+			fit = BoundingSphere.NON_MINIMAL;
+		t1 = System.nanoTime();
+		metrics.initNanos = t1-t0;
+
+		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2)+inflate, fit);
+		bou.error = error()+inflate;
+		bou.solverTime = (t1-t0)*1e-6;
+		bou.timeUnit = "millisecond";
+		bou.passes = passes;
+		bou.metatext = metatext;
+		bou.supportPositions = new ArrayList<Vec3>();
+		for (Vec3 s : supports)
+			bou.supportPositions.add(new Vec3(s));
+		bou.supportIndices = new ArrayList<Integer>(supportIndices);
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -63,11 +520,11 @@ public class GeoFit
 
 	public BoundingSphere boundingSphere(ObjectInfo info)
 	{
-		passes = 0;
+		startSolve("GeoFit");
 		if (info.getPreviewMesh() == null)
-			calculateParameters(info.getBounds().getCorners());
+			calculateParameters(new Vec3Points(info.getBounds().getCorners()));
 		else
-			calculateParameters(info.getPreviewMesh().vert);
+			calculateParameters(new Vec3Points(info.getPreviewMesh().vert));
 		
 		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2), fit,info.getId());
 		bou.error = error();
@@ -76,11 +533,12 @@ public class GeoFit
 		bou.passes = passes;
 		bou.metatext = "Created by GeoFit.boundingSphere()";
 		
-		Mat4 toScene = info.getCoords().fromLocal();
-		toScene.transform(bou.center);
 		bou.supportPositions = new ArrayList<Vec3>();
 		for (Vec3 s : supports)
-			bou.supportPositions.add(toScene.times(s));
+			bou.supportPositions.add(new Vec3(s));
+		bou.supportIndices = new ArrayList<Integer>(supportIndices);
+		SweptSphere.place(bou, info.getCoords().fromLocal());
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -89,25 +547,59 @@ public class GeoFit
 
 	public BoundingSphere boundingSphere(ArrayList<ObjectInfo> infoList)
 	{
-		passes = 0;
+		startSolve("GeoFit");
+		long tg = System.nanoTime();
 		ArrayList<Vec3> vertexList = new ArrayList<Vec3>();
 		Mat4 toScene;
 		Vec3[] vObj;
+
+		// Objects, that are used by several instances, are reduced to the points, that may 
+		// be on the hull, once, and only those are transformed for each instance. The support
+		// indices are given in the order of all the points of all the objects.
+
+		IdentityHashMap<Object3D, Integer> uses = new IdentityHashMap<Object3D, Integer>();
+		for (ObjectInfo info: infoList)
+			if (info.getObject() != null && info.getPreviewMesh() != null)
+				uses.merge(info.getObject(), 1, Integer::sum);
+		IdentityHashMap<Object3D, int[]> candidates = new IdentityHashMap<Object3D, int[]>();
+		int[] original = new int[64];
+		int offset = 0;
+
 		for (ObjectInfo info: infoList)
 		{
+			checkCancelled();
 			toScene = info.getCoords().fromLocal();
+			int[] keep = null;
 			if (info.getPreviewMesh() == null)
 				vObj = info.getBounds().getCorners();
 			else
+			{
 				vObj = info.getPreviewMesh().vert;
-			for(Vec3 v: vObj)
-				vertexList.add(toScene.times(v));
+				if (vObj.length > INSTANCE_POINTS && uses.getOrDefault(info.getObject(), 0) > 1)
+				{
+					final Vec3[] local = vObj;
+					keep = candidates.computeIfAbsent(info.getObject(), o -> HullCandidates.select(local));
+				}
+			}
+			int count = (keep == null ? vObj.length : keep.length);
+			if (vertexList.size()+count > original.length)
+				original = Arrays.copyOf(original, Math.max(original.length*2, vertexList.size()+count));
+			for (int k = 0; k < count; k++)
+			{
+				int i = (keep == null ? k : keep[k]);
+				original[vertexList.size()] = offset+i;
+				vertexList.add(toScene.times(vObj[i]));
+			}
+			offset += vObj.length;
 		}
 		
 		Vec3[] vertex = new Vec3[vertexList.size()];
 		for(int i = 0; i < vertex.length; i++)
 			vertex[i] = vertexList.get(i);
-		calculateParameters(vertex);
+		metrics.gatherNanos = System.nanoTime()-tg;
+		calculateParameters(new Vec3Points(vertex));
+		for (int s = 0; s < supportIndices.size(); s++)
+			supportIndices.set(s, original[supportIndices.get(s)]);
 
 		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2), fit);
 		bou.solverTime = (t1-t0)*1e-6;
@@ -115,7 +607,9 @@ public class GeoFit
 		bou.passes = passes;
 		bou.metatext = "Created by GeoFit.boundingSphere()";
 		bou.supportPositions = supports; // they are new and not used anywhere after this
+		bou.supportIndices = new ArrayList<Integer>(supportIndices);
 		bou.error = error();
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -127,18 +621,31 @@ public class GeoFit
 	
 	public BoundingSphere fastSphere(Vec3[] vertex)
 	{
-		passes = 0;
+		return fastSphere(new Vec3Points(vertex));
+	}
+
+	/** 
+		Calculate a non-minimal 2-pass bounding sphere for points in any storage. 
+		The radius is grown by the error bound of the storage.
+	*/
+	
+	public BoundingSphere fastSphere(PointData data)
+	{
+		startSolve("GeoFit.fastSphere");
 		t0 = System.nanoTime();
-		center = boxCenter(vertex);
-		radius2 = center.distance2(mostDistant(center, 0.0, vertex));
+		center = boxCenter(data);
+		radius2 = center.distance2(mostDistant(center, 0.0, data));
 		t1 = System.nanoTime();
+		metrics.points = data.size();
+		metrics.initNanos = t1-t0;
 		
-		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2),  BoundingSphere.NON_MINIMAL);
+		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2)+data.errorBound(),  BoundingSphere.NON_MINIMAL);
 		bou.solverTime = (t1-t0)*1e-6;
 		bou.timeUnit = "millisecond";
 		bou.passes = passes;
 		bou.metatext = "Created by GeoFit.fastSphere()";
 		
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -152,17 +659,19 @@ public class GeoFit
 
 	public BoundingSphere fastSphere(ObjectInfo info)
 	{
-		passes = 0;
-		Vec3[] vertex;
+		startSolve("GeoFit.fastSphere");
+		PointData data;
 		if (info.getPreviewMesh() == null)
-			vertex = info.getBounds().getCorners();
+			data = new Vec3Points(info.getBounds().getCorners());
 		else
-			vertex = info.getPreviewMesh().vert;
+			data = new Vec3Points(info.getPreviewMesh().vert);
 		
 		t0 = System.nanoTime();
-		center = boxCenter(vertex);
-		radius2 = center.distance2(mostDistant(center, 0.0, vertex));
+		center = boxCenter(data);
+		radius2 = center.distance2(mostDistant(center, 0.0, data));
 		t1 = System.nanoTime();
+		metrics.points = data.size();
+		metrics.initNanos = t1-t0;
 		
 		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2), BoundingSphere.NON_MINIMAL, info.getId());
 		bou.solverTime = (t1-t0)*1e-6;
@@ -170,9 +679,9 @@ public class GeoFit
 		bou.passes = passes;
 		bou.metatext = "Created by GeoFit.fastSphere()";
 		
-		Mat4 toScene = info.getCoords().fromLocal();
-		toScene.transform(bou.center);
+		SweptSphere.place(bou, info.getCoords().fromLocal());
 		
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -184,12 +693,14 @@ public class GeoFit
 
 	public BoundingSphere fastSphere(ArrayList<ObjectInfo> infoList)
 	{
-		passes = 0;
+		startSolve("GeoFit.fastSphere");
+		long tg = System.nanoTime();
 		ArrayList<Vec3> vertexList = new ArrayList<Vec3>();
 		Mat4 toScene;
 		Vec3[] vObj;
 		for (ObjectInfo info: infoList)
 		{
+			checkCancelled();
 			toScene = info.getCoords().fromLocal();
 			if (info.getPreviewMesh() == null)
 				vObj = info.getBounds().getCorners();
@@ -204,11 +715,15 @@ public class GeoFit
 		Vec3[] vertex = new Vec3[vertexList.size()];
 		for(int i = 0; i < vertex.length; i++)
 			vertex[i] = vertexList.get(i);
+		metrics.gatherNanos = System.nanoTime()-tg;
+		PointData data = new Vec3Points(vertex);
 
 		t0 = System.nanoTime();
-		center = boxCenter(vertex);
-		radius2 = center.distance2(mostDistant(center, 0.0, vertex));
+		center = boxCenter(data);
+		radius2 = center.distance2(mostDistant(center, 0.0, data));
 		t1 = System.nanoTime();
+		metrics.points = data.size();
+		metrics.initNanos = t1-t0;
 
 		BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2),  BoundingSphere.NON_MINIMAL);
 		bou.solverTime = (t1-t0)*1e-6;
@@ -216,6 +731,7 @@ public class GeoFit
 		bou.passes = passes;
 		bou.metatext = "Created by GeoFit.fastSphere()";
 
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -223,14 +739,21 @@ public class GeoFit
 		This is the main loop of the algoritm. 
 	*/
 
-	private void calculateParameters(Vec3[] vertex)
+	private void calculateParameters(PointData vertex)
 	{
 		t0 = System.nanoTime();
+		metrics.points = vertex.size();
+		boundRadius2 = Double.POSITIVE_INFINITY;
 
-		if (vertex.length == 1)
+		if (vertex.size() == 1)
 		{
 			radius2 = 0;
-			center = vertex[0];
+			center = vertex.point(0);
+			supports = new ArrayList<Vec3>();
+			supports.add(center);
+			supportIndices = new ArrayList<Integer>();
+			supportIndices.add(0);
+			fit = BoundingSphere.EXACT;
 			t1 = System.nanoTime();
 			return;
 		}
@@ -238,33 +761,74 @@ public class GeoFit
 		t0 = System.nanoTime();
 
 		// Get initial 2-support sphere. If all fit in we are done.
+		// The first two passes make the fastSphere, that encloses all.
 		
 		supports = new ArrayList<Vec3>();
+		supportIndices = new ArrayList<Integer>();
 		center = boxCenter(vertex);
 
 		supports.add(mostDistant(center, 0.0, vertex));
+		supportIndices.add(lastIndex);
+		if (offerBound(center, supports.get(0), lastIndex, 0.0, 2))
+			return;
 		supports.add(mostDistant(supports.get(0), center.distance2(supports.get(0)), vertex));
+		supportIndices.add(lastIndex);
 		center = supports.get(0).plus(supports.get(1)).times(0.5);
 		radius2 = Math.max(center.distance2(supports.get(0)), (center.distance2(supports.get(1))));
-		exo = mostDistant(center, radius2, vertex);
+		exo = onSurface(mostDistant(center, radius2, vertex));
+		exoIndex = lastIndex;
 		
 		t1 = System.nanoTime();
+		metrics.initNanos = t1-t0;
 		
 		if (exo == null)
+		{
+			fit = BoundingSphere.EXACT;
 			return;
+		}
+		if (offerBound(center, exo, exoIndex, radius2, 1))
+			return;
+		complete(vertex);
+	}
 
-		// Go checking points, that were left outside. Favor smallest size, that can be obtained with 
-		// lowest count of points. Increase number of supports only if a sub set can not enclose all.
+	/**
+		The completing phase. Go checking points, that were left outside, starting with
+		<code>exo</code> and the current supports.
+	*/
 
-		int supportCount = supports.size(); // = 2
+	private void complete(PointData vertex)
+	{
+		// Favor smallest size, that can be obtained with lowest count of points. 
+		// Increase number of supports only if a sub set can not enclose all.
+
+		int supportCount = supports.size(); // = 2, unless seeded by update()
+		
+		// The subsets can only have up to four supports, so the count of five 
+		// is never reached and the loop ends, when no point is left outside.
 		
 		while (supportCount < 5 && exo != null)
 		{
 			while (supports.size() == supportCount && exo != null)
 			{
 				supports.add(exo);
+				supportIndices.add(exoIndex);
+				metrics.supportChanges++;
+				long ts = System.nanoTime();
+				double r2before = radius2;
+				Vec3[] tried = supports.toArray(new Vec3[supports.size()]);
+				int[] triedIndex = new int[tried.length];
+				for (int k = 0; k < tried.length; k++)
+					triedIndex[k] = supportIndices.get(k);
 				checkSubGroups(supports);
-				exo = mostDistant(center, radius2, vertex);
+				if (radius2 <= r2before)
+					solveExactly(tried, triedIndex, r2before, vertex);
+				long tr = System.nanoTime();
+				metrics.subGroupNanos += tr-ts;
+				exo = onSurface(mostDistant(center, radius2, vertex));
+				exoIndex = lastIndex;
+				metrics.rescanNanos += System.nanoTime()-tr;
+				if (exo != null && offerBound(center, exo, exoIndex, radius2, 1))
+					return;
 			}
 			supportCount = supports.size();
 		}
@@ -277,89 +841,160 @@ public class GeoFit
 			fit = BoundingSphere.APPROXIMATE; // This point should never be reached. 
 	}
 
+	/**
+		Rounding errors have kept the subsets of the <code>tried</code> supports from growing 
+		the sphere. Solve them with Welzl instead and go on from their sphere. If even that 
+		does not grow, the points are solved with Welzl as a whole, so that the completing 
+		phase finds none outside and the result stays exact.
+	*/
+
+	private void solveExactly(Vec3[] tried, int[] triedIndex, double r2before, PointData vertex)
+	{
+		BoundingSphere exact = new Welzl().boundingSphere(tried);
+		if (exact.radius*exact.radius <= r2before)
+		{
+			passes++;
+			checkCancelled();
+			metrics.pointsScanned += vertex.size();
+			Vec3[] all = new Vec3[vertex.size()];
+			for (int i = 0; i < all.length; i++)
+				all[i] = vertex.point(i);
+			tried = all;
+			triedIndex = null;
+			exact = new Welzl().boundingSphere(all);
+		}
+		center = exact.center;
+		radius2 = 0.0;
+		supports = new ArrayList<Vec3>();
+		supportIndices = new ArrayList<Integer>();
+		for (int s : exact.supportIndices)
+		{
+			supports.add(tried[s]);
+			supportIndices.add(triedIndex == null ? s : triedIndex[s]);
+		}
+		for (Vec3 v : tried)
+			radius2 = Math.max(radius2, center.distance2(v));
+	}
+
+	/**
+		The sphere from <code>c</code> to the most distant point <code>far</code> encloses 
+		all of the points. Keep it if it is the smallest so far and check, if the budget 
+		allows the <code>nextPasses</code>, that are needed to find the next one. If not,
+		or if the kept sphere is within epsilon of the lower limit <code>lower2</code> of 
+		the squared radius, the kept sphere is made the result and <code>true</code> is returned.
+	*/
+
+	private boolean offerBound(Vec3 c, Vec3 far, int farIndex, double lower2, int nextPasses)
+	{
+		if (! limited)
+			return false;
+
+		double r2 = c.distance2(far);
+		if (r2 < boundRadius2)
+		{
+			boundCenter = new Vec3(c);
+			boundSupport = far;
+			boundSupportIndex = farIndex;
+			boundRadius2 = r2;
+			if (listener != null)
+			{
+				BoundingSphere bou = new BoundingSphere(new Vec3(c), Math.sqrt(r2), BoundingSphere.NON_MINIMAL);
+				bou.solverTime = (System.nanoTime()-t0)*1e-6;
+				bou.timeUnit = "millisecond";
+				bou.passes = passes;
+				bou.metatext = "Intermediate result of GeoFit.boundingSphere()";
+				listener.sphereFound(bou);
+			}
+		}
+		if (passes+nextPasses <= passLimit && System.nanoTime()-deadline < 0 && boundRadius2 > lower2*epsilon2)
+			return false;
+
+		center = boundCenter;
+		radius2 = boundRadius2;
+		supports = new ArrayList<Vec3>();
+		supports.add(boundSupport);
+		supportIndices = new ArrayList<Integer>();
+		supportIndices.add(boundSupportIndex);
+		fit = BoundingSphere.NON_MINIMAL;
+		t1 = System.nanoTime();
+		return true;
+	}
+
 	/**
 		Check if a smaller set of supports can produce a sphere, that
 		encoloses all the suggested supports. If so, the smallest possible 
-		one is selected and the obsolete enclosed support excluded.
+		one is selected and the obsolete enclosed supports excluded.
 	*/
 	
 	private void checkSubGroups(ArrayList<Vec3> supports)
 	{
+		metrics.subGroupChecks++;
 		int size = supports.size();
+		int last = size-1;
+		Vec3[] all = supports.toArray(new Vec3[size]);
 		
-		// Create subsets, where one of the supports is missing.
-		// We are skippiung the last one, because we already know that the 
-		// last added point does not fit the set, that was there before it.
-		
-		Vec3[][] groups = new Vec3[size-1][size-1];   // sub sets
-		Vec3[] cnt = new Vec3[size-1];                // centers
-		double[] r2  = new double[size-1];            // squared radii
+		// Try every subset, that includes the last added point. We already know that 
+		// the last added point does not fit the set, that was there before it, so it 
+		// must be on the surface. The subsets are the bit masks of the other supports.
+		// Dropping only one support at a time would miss the cases, where the last 
+		// point and just one of the others define the sphere.
 
-		int n;
-		for (int i = 0; i < groups.length; i++)
+		double r2fit = Double.POSITIVE_INFINITY, r2least = Double.POSITIVE_INFINITY;
+		int enclosing = -1, least = -1;
+		Vec3 cFit = null, cLeast = null;
+
+		for (int mask = 1; mask < 1 << last; mask++)
 		{
-			n = 0;
-			for (int j = 0; j < size; j++)
-			{
-				if (j != i)
-				{
-					groups[i][n] = supports.get(j);
-					n++;
-				}
-			}
-		}
+			int n = Integer.bitCount(mask)+1;
+			if (n > 4)
+				continue;
+			Vec3[] group = new Vec3[n];
+			int k = 0;
+			for (int j = 0; j < last; j++)
+				if ((mask & 1 << j) != 0)
+					group[k++] = all[j];
+			group[k] = all[last];
 
-		// Calculate parameters for the sub sets and check if they can enclose
-		// the entire set. At the same time, make note of the smallest one that 
-		// can enclose all.
+			Vec3 c = centerOf(group);
+			double r2 = radius2Of(c, group);
+			if (r2 >= r2fit)
+				continue;
 
-		double r2j, r2fit = Double.POSITIVE_INFINITY;
-		int enclosing = -1;
-		boolean[] allFit = new boolean[size];
+			// Check if the ones that were left out of this set fit in.
 
-		for (int i = 0; i < groups.length; i++) // The last one is the one that brought us here anyway...
-		{
-			cnt[i] = centerOf(groups[i]);
-			r2[i] = radius2Of(cnt[i], groups[i]);
-			allFit[i] = true;
-
-			// Check if the one that was left out of this set fits in.
-			
-			if (cnt[i].distance2(supports.get(i)) > r2[i])
-				allFit[i] = false;
-
-			// Check is if this group is allFit and smaller than the previous allFit
-			
-			if (allFit[i] && r2[i] < r2fit)
+			double r2all = radius2Of(c, all);
+			if (r2all <= r2+slack2(c, r2))
 			{
-				r2fit = r2[i];
-				enclosing = i;
+				r2fit = Math.max(r2, r2all);
+				enclosing = mask;
+				cFit = c;
+			}
+			else if (r2all < r2least)
+			{
+				r2least = r2all;
+				least = mask;
+				cLeast = c;
 			}
 		}
 
-		// Set the sphere parameters to the smallest enclosing subset or 
-		// if one was not found, recalculate parameters with the entire set.
+		// If rounding errors let none of the subsets enclose all, take the one that 
+		// needs the least growth to do it.
 
-		if (enclosing > -1)
-		{
-			supports.clear();
-			for (Vec3 g: groups[enclosing])
-				supports.add(g);
-			center = cnt[enclosing];
-			radius2 = r2[enclosing];
-		}
-		else
+		if (enclosing < 0)
 		{
-			if (supports.size() == 2)
-				center = (supports.get(0).plus(supports.get(1)).times(0.5));
-			else if (supports.size() == 3)
-				center = centerOf3(supports.get(0), supports.get(1), supports.get(2));
-			else
-				center = centerOf4(supports.get(0), supports.get(1), supports.get(2), supports.get(3));
-			radius2 = 0.0;
-			for(Vec3 s: supports)
-				radius2 = Math.max(radius2, center.distance2(s));
+			enclosing = least;
+			cFit = cLeast;
+			r2fit = r2least;
 		}
+
+		for (int j = last-1; j >= 0; j--)
+			if ((enclosing & 1 << j) == 0)
+			{
+				supports.remove(j);
+				supportIndices.remove(j);
+			}
+		center = cFit;
+		radius2 = r2fit;
 	}
 
 	/**
@@ -374,22 +1009,41 @@ public class GeoFit
 		@param vertex     the group of vectors to select from
 	*/
 
-	private Vec3 mostDistant(Vec3 vecFrom, double limitDist2, Vec3[] vertex)
+	private Vec3 mostDistant(Vec3 vecFrom, double limitDist2, PointData vertex)
 	{
 		passes++;
-		Vec3 mostDistant = null;
-		double r2last = limitDist2;
-		double r2v;
-		for (Vec3 v : vertex)
-		{
-			r2v = vecFrom.distance2(v);
-			if (r2v > r2last)
-			{
-				mostDistant = v;
-				r2last = r2v;
-			}
-		}
-		return mostDistant;
+		checkCancelled();
+		metrics.pointsScanned += vertex.size();
+		PassEvent event = new PassEvent();
+		event.begin();
+		int mostDistant = vertex.mostDistant(vecFrom.x, vecFrom.y, vecFrom.z, limitDist2);
+		lastIndex = mostDistant;
+		event.finish(metrics.solver, vertex.size(), passes, supports == null ? 0 : supports.size());
+		return (mostDistant < 0 ? null : vertex.point(mostDistant));
+	}
+
+	/**
+		If the most distant point <code>exo</code> is outside the sphere by no more than
+		the rounding errors, the radius is grown to reach it and <code>null</code> returned.
+		Since no other point is further away, the sphere then encloses all.
+	*/
+
+	private Vec3 onSurface(Vec3 exo)
+	{
+		if (exo == null)
+			return null;
+		double r2 = center.distance2(exo);
+		if (r2 > radius2+slack2(center, radius2))
+			return exo;
+		radius2 = r2;
+		return null;
+	}
+
+	/** How far outside a sphere at c with the squared radius r2 a point can be and still be on it. */
+
+	private static double slack2(Vec3 c, double r2)
+	{
+		return r2*SURFACE+Circumcenter.rounding2(c.x, c.y, c.z, r2);
 	}
 
 	/**
@@ -397,34 +1051,34 @@ public class GeoFit
 	*/
 	
 	public Vec3 boxCenter(Vec3[] vertex)
+	{
+		return boxCenter(new Vec3Points(vertex));
+	}
+
+	/**
+		Calculates the "box center" (AABB center) for points in any storage.
+	*/
+	
+	public Vec3 boxCenter(PointData vertex)
 	{
 		passes++;
-		double minX, maxX, minY, maxY, minZ, maxZ;
-		
-		// The classical way would be to set the min and max values to the opposite 
-		// infinity, but we can as well start at one of the existing points.
-		
-		minX = maxX = vertex[0].x; 
-		minY = maxY = vertex[0].y; 
-		minZ = maxZ = vertex[0].z; 
-		
-		for (Vec3 v: vertex)
-		{
-			minX = Math.min(minX, v.x);
-			maxX = Math.max(maxX, v.x);
-			minY = Math.min(minY, v.y);
-			maxY = Math.max(maxY, v.y);
-			minZ = Math.min(minZ, v.z);
-			maxZ = Math.max(maxZ, v.z);
-		}
+		checkCancelled();
+		metrics.pointsScanned += vertex.size();
+		PassEvent event = new PassEvent();
+		event.begin();
+		double[] box = new double[6];
+		vertex.bounds(box);
+		event.finish(metrics.solver, vertex.size(), passes, 0);
 		
-		return new Vec3((maxX+minX)*0.5, (maxY+minY)*0.5, (maxZ+minZ)*0.5);
+		return new Vec3((box[3]+box[0])*0.5, (box[4]+box[1])*0.5, (box[5]+box[2])*0.5);
 	}
 
 	/** 
 		Find the circumcenter of up to 4 support points.
 		In 3D-space 4 is the highest possible number of 
 		supports that are needed to define a sphere.
+		See <code>Circumcenter</code> for the handling of 
+		nearly degenerate sets.
 	*/
 
 	private Vec3 centerOf(Vec3[] v)
@@ -432,56 +1086,10 @@ public class GeoFit
 		if (v.length == 2)
 			return (v[0].plus(v[1]).times(0.5));
 		if (v.length == 3)
-			return centerOf3(v[0], v[1], v[2]);
-		return centerOf4(v[0], v[1], v[2], v[3]);
+			return Circumcenter.of3(v[0], v[1], v[2]);
+		return Circumcenter.of4(v[0], v[1], v[2], v[3]);
 	}
 	
-	/** 
-		Find the circumcenter of 3 support points.
-	*/
-	
-	private Vec3 centerOf3(Vec3 v1, Vec3 v2, Vec3 v3)
-	{
-		// I did not mark down, where I got this. 
-		// It is based on calculating barycentric weights 
-		// for the corner points.
-
-		double a2 = v2.distance2(v3);
-		double b2 = v3.distance2(v1);
-		double c2 = v1.distance2(v2);
-		double wA = a2*(b2+c2-a2);
-		double wB = b2*(c2+a2-b2);
-		double wC = c2*(a2+b2-c2);
-		double wSum = wA+wB+wC;
-
-		return v1.times(wA).plus(v2.times(wB).plus(v3.times(wC))).times(1.0/wSum);
-	}
-
-	/**
-		Find the circumcenter of 4 support points.
-	*/
-
-	private Vec3 centerOf4(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 v4)
-	{
-		// ...And I can't remember how I came up with this one either...
-		// Anyway, the problem is simplified into two points and a straight line 
-		// on which the center point is at equal distance from both of the two.
-
-		Vec3 faceCenter = centerOf3(v1, v2, v3);
-		Vec3 faceCenterTov4  = v4.minus(faceCenter);
-		Vec3 dirDelta = (v2.minus(v1).cross(v3.minus(v1)));
-		dirDelta.normalize();
-		
-		//double r2face = faceCenter.distance2(v1);
-		//double heightv4h = faceCenterTov4.dot(dirDelta);
-		//double r2v4 = faceCenterTov4.length2();
-		//double delta = (r2v4-r2face)/(2*heightv4h);
-		double r2face = (faceCenter.distance2(v1)+faceCenter.distance2(v2)+faceCenter.distance2(v3))/3.0;
-		double delta = (faceCenterTov4.length2()-r2face)/(2*faceCenterTov4.dot(dirDelta));
-
-		return faceCenter.plus(dirDelta.times(delta));
-	}
-
 	/**
 		Find the maximum squared distance from c to each of vert.
 	*/
@@ -506,4 +1114,38 @@ public class GeoFit
 			r2min = Math.min(r2min, center.distance2(s));
 		return Math.sqrt(radius2)-Math.sqrt(r2min);
 	}
+
+	/** Reset the counters for a new solve. */
+
+	private void startSolve(String solver)
+	{
+		passes = 0;
+		metrics = new SolverMetrics(solver);
+		event = new SolveEvent();
+		event.begin();
+	}
+
+	/** Attach the metrics to the result and hand them to the recorder. */
+
+	private void finishSolve(BoundingSphere bou)
+	{
+		metrics.passes = passes;
+		metrics.totalNanos = t1-t0;
+		metrics.countAllocation();
+		bou.metrics = metrics;
+		if (recorder != null)
+			recorder.record(metrics);
+		event.finish(bou, metrics);
+	}
+
+	/** Throw, if the solver has been cancelled. The request is cleared, so the solver can be used again. */
+
+	private void checkCancelled()
+	{
+		if (cancelled)
+		{
+			cancelled = false;
+			throw new CancellationException();
+		}
+	}
 }
@@ -0,0 +1,177 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.ArrayList;
+
+/**
+	<b>HullCandidates</b> drops the points of a mesh, that can not be on the surface of a 
+	bounding sphere, however the mesh is placed.<p>
+
+	A point strictly inside the convex hull of some of the points is inside the hull of all, 
+	and so strictly inside any sphere, that encloses them. That stays true after any affine 
+	transform, so the points can be dropped once for a mesh, that is used by many instances. 
+	The extremal points along the 49 directions of EPOS-98 are found and the hull of those
+	up to 98 points is built by testing the planes through each of their triples. A point 
+	is kept, if it is not inside every face plane by a margin. If the extremal points are
+	on one plane, all the points are kept.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+final class HullCandidates
+{
+	// Margin of the inside test relative to the size of the mesh. Points closer to 
+	// the hull than this are kept, so the rounding of the planes is on the safe side.
+
+	private static final double MARGIN = 1e-9;
+
+	// Bound of the rounding error of a distance to a plane through three points, relative
+	// to the magnitude of the coordinates divided by the sine of the angle at the first 
+	// point. It is about ten times the error of the arithmetic.
+
+	private static final double ROUNDING = 1e-14;
+
+	private HullCandidates()
+	{}
+
+	/** The indices of the points, that may be on the surface of an enclosing sphere. */
+
+	static int[] select(Vec3[] vertex)
+	{
+		int n = vertex.length;
+		double[][] dir = Directions.EPOS98;
+		int[] extreme = new int[dir.length*2];
+		double[] lo = new double[dir.length], hi = new double[dir.length];
+		for (int d = 0; d < dir.length; d++)
+		{
+			lo[d] = Double.POSITIVE_INFINITY;
+			hi[d] = Double.NEGATIVE_INFINITY;
+		}
+		for (int i = 0; i < n; i++)
+		{
+			Vec3 v = vertex[i];
+			for (int d = 0; d < dir.length; d++)
+			{
+				double s = dir[d][0]*v.x+dir[d][1]*v.y+dir[d][2]*v.z;
+				if (s < lo[d])
+				{
+					lo[d] = s;
+					extreme[d*2] = i;
+				}
+				if (s > hi[d])
+				{
+					hi[d] = s;
+					extreme[d*2+1] = i;
+				}
+			}
+		}
+
+		// The distinct extremal points and the size of the mesh.
+
+		boolean[] isExtreme = new boolean[n];
+		ArrayList<Vec3> e = new ArrayList<Vec3>();
+		for (int i : extreme)
+			if (! isExtreme[i])
+			{
+				isExtreme[i] = true;
+				e.add(vertex[i]);
+			}
+		double size = 0.0, magnitude = 0.0;
+		for (int d = 0; d < 3; d++)
+		{
+			size = Math.max(size, hi[d]-lo[d]);
+			magnitude = Math.max(magnitude, Math.max(Math.abs(lo[d]), Math.abs(hi[d])));
+		}
+		double[] plane = faces(e.toArray(new Vec3[e.size()]), size+magnitude, MARGIN*size);
+		if (plane.length == 0)
+			return all(n);
+
+		int[] keep = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++)
+		{
+			Vec3 v = vertex[i];
+			boolean inside = ! isExtreme[i];
+			for (int f = 0; f < plane.length && inside; f += 5)
+				if (plane[f]*v.x+plane[f+1]*v.y+plane[f+2]*v.z-plane[f+3] <= plane[f+4])
+					inside = false;
+			if (! inside)
+				keep[count++] = i;
+		}
+		int[] found = new int[count];
+		System.arraycopy(keep, 0, found, 0, count);
+		return found;
+	}
+
+	/**
+		The face planes of the hull of the points as unit inward normals, offsets and 
+		tolerances. A plane through three of the points is a face plane, if none of the points
+		is outside it by more than the tolerance. The tolerance covers the rounding errors of
+		the plane, so no true face is missed, even if its points are nearly in line. The ones 
+		that are accepted by the tolerance, but are not true faces, only cut off points closer 
+		than the tolerance. A point inside all of the planes by more than their tolerances is 
+		then inside the hull. Returns an empty array, if the points are on one plane.
+	*/
+
+	private static double[] faces(Vec3[] e, double magnitude, double margin)
+	{
+		ArrayList<double[]> faces = new ArrayList<double[]>();
+		int m = e.length;
+		for (int a = 0; a < m; a++)
+			for (int b = a+1; b < m; b++)
+				for (int c = b+1; c < m; c++)
+				{
+					Vec3 ab = e[b].minus(e[a]), ac = e[c].minus(e[a]);
+					Vec3 normal = ab.cross(ac);
+					double length = normal.length();
+					if (length == 0.0)
+						continue;
+					double sine = length/(ab.length()*ac.length());
+					double tolerance = Math.max(margin, ROUNDING*magnitude/sine);
+					normal.scale(1.0/length);
+					double offset = normal.dot(e[a]);
+
+					// All on one side, the inner side being the one with the points off the plane.
+
+					int above = 0, below = 0;
+					for (int k = 0; k < m && (above == 0 || below == 0); k++)
+					{
+						double s = normal.dot(e[k])-offset;
+						if (s > tolerance)
+							above++;
+						else if (s < -tolerance)
+							below++;
+					}
+					if ((above > 0 && below > 0) || (above == 0 && below == 0))
+						continue;
+					if (below > 0)
+					{
+						normal.scale(-1.0);
+						offset = -offset;
+					}
+					faces.add(new double[] {normal.x, normal.y, normal.z, offset, 2.0*tolerance});
+				}
+
+		double[] plane = new double[faces.size()*5];
+		for (int f = 0; f < faces.size(); f++)
+			System.arraycopy(faces.get(f), 0, plane, f*5, 5);
+		return plane;
+	}
+
+	private static int[] all(int n)
+	{
+		int[] index = new int[n];
+		for (int i = 0; i < n; i++)
+			index[i] = i;
+		return index;
+	}
+}
@@ -0,0 +1,277 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.ArrayList;
+
+/**
+	<b>MaintainedSphere</b> keeps the bounding sphere of a changing set of points, for example
+	of a sliding window over a stream. Each added point gets a handle, that stays the same
+	until the point is removed, and the sphere knows its supports by their handles.<p>
+
+	Adding a point inside the sphere and removing a point, that is not a support, take constant
+	time and do not touch the other points. Adding a point outside grows the sphere, continuing 
+	from the current supports. Removing a support may let the sphere shrink, so it is solved 
+	again. The new sphere is first fitted to a small set of candidates, the points that were
+	furthest from the center at the previous solve, and then checked against all of the points 
+	in one pass. Usually the candidates already contain the new supports.<p>
+
+	The handles of removed points are used again for new points. The class is not thread safe.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class MaintainedSphere
+{
+	private static final double SURFACE = 1e-13;
+
+	private Vec3[] points;     // dense, the first count are in use
+	private int[] handleAt;    // position -> handle
+	private int[] positionOf;  // handle -> position, -1 if free
+	private int[] freeHandles;
+	private int count, freeCount, handleCount;
+
+	private int candidateLimit;
+	private int[] candidates;  // handles
+	private int candidateCount;
+
+	private GeoFit geofit;
+	private BoundingSphere sphere; // supportIndices are handles
+	private double radius2;
+
+	/** Create an empty set, that keeps 32 candidates for re-solving. */
+
+	public MaintainedSphere()
+	{
+		this(32);
+	}
+
+	/** Create an empty set, that keeps the given number of candidates for re-solving. */
+
+	public MaintainedSphere(int candidateLimit)
+	{
+		this.candidateLimit = Math.max(4, candidateLimit);
+		points = new Vec3[16];
+		handleAt = new int[16];
+		positionOf = new int[16];
+		freeHandles = new int[16];
+		candidates = new int[this.candidateLimit];
+		geofit = new GeoFit();
+	}
+
+	/** The number of points in the set. */
+
+	public int size()
+	{
+		return count;
+	}
+
+	/** The point, that has the given handle. */
+
+	public Vec3 point(int handle)
+	{
+		return points[position(handle)];
+	}
+
+	/** Check if the point with the given handle is a support of the current sphere. */
+
+	public boolean isSupport(int handle)
+	{
+		position(handle);
+		return sphere.supportIndices.contains(handle);
+	}
+
+	/**
+		The current sphere. The <code>supportIndices</code> of it are the handles of the 
+		supports. For an empty set <code>null</code> is returned.
+	*/
+
+	public BoundingSphere sphere()
+	{
+		if (sphere == null)
+			return null;
+		BoundingSphere bou = new BoundingSphere(new Vec3(sphere.center), sphere.radius, sphere.fit);
+		bou.error = sphere.error;
+		bou.solverTime = sphere.solverTime;
+		bou.timeUnit = sphere.timeUnit;
+		bou.passes = sphere.passes;
+		bou.metatext = "Created by MaintainedSphere";
+		bou.metrics = sphere.metrics;
+		bou.supportIndices = new ArrayList<Integer>(sphere.supportIndices);
+		bou.supportPositions = new ArrayList<Vec3>();
+		for (int h : sphere.supportIndices)
+			bou.supportPositions.add(new Vec3(points[positionOf[h]]));
+		return bou;
+	}
+
+	/** Add a copy of a point to the set and return its handle. */
+
+	public int add(Vec3 point)
+	{
+		int handle = (freeCount > 0 ? freeHandles[--freeCount] : handleCount++);
+		if (count == points.length || handle == positionOf.length)
+			grow();
+		int pos = count++;
+		points[pos] = new Vec3(point);
+		handleAt[pos] = handle;
+		positionOf[handle] = pos;
+
+		if (count == 1)
+		{
+			sphere = new BoundingSphere(new Vec3(point), 0.0, BoundingSphere.EXACT);
+			sphere.supportIndices = new ArrayList<Integer>();
+			sphere.supportIndices.add(handle);
+			radius2 = 0.0;
+			return handle;
+		}
+		if (sphere.center.distance2(point) <= radius2*(1.0+SURFACE))
+			return handle;
+
+		// The point is outside. Continue the solve from the current supports.
+
+		BoundingSphere previous = toPositions(sphere);
+		setSphere(geofit.update(previous, data(), new int[] {pos}));
+		return handle;
+	}
+
+	/** Remove the point with the given handle from the set. */
+
+	public void remove(int handle)
+	{
+		int pos = position(handle);
+		boolean support = sphere.supportIndices.contains(handle);
+
+		// Move the last point into the gap, so that the points stay dense.
+
+		int last = count-1;
+		points[pos] = points[last];
+		handleAt[pos] = handleAt[last];
+		positionOf[handleAt[pos]] = pos;
+		points[last] = null;
+		count--;
+		positionOf[handle] = -1;
+		freeHandles[freeCount++] = handle;
+
+		for (int c = 0; c < candidateCount; c++)
+			if (candidates[c] == handle)
+			{
+				candidates[c] = candidates[--candidateCount];
+				break;
+			}
+
+		if (support)
+			resolve(handle);
+	}
+
+	/** Find the sphere again, after the support <code>removed</code> has been removed. */
+
+	private void resolve(int removed)
+	{
+		if (count == 0)
+		{
+			sphere = null;
+			candidateCount = 0;
+			return;
+		}
+
+		// The candidates and the remaining supports
+
+		int[] cand = new int[candidateCount+4];
+		int n = 0;
+		for (int c = 0; c < candidateCount; c++)
+			cand[n++] = candidates[c];
+		for (int h : sphere.supportIndices)
+			if (h != removed && ! contains(cand, n, h))
+				cand[n++] = h;
+
+		if (n < 2 || count <= 2*candidateLimit)
+			setSphere(geofit.boundingSphere(data()));
+		else
+		{
+			Vec3[] cv = new Vec3[n];
+			for (int c = 0; c < n; c++)
+				cv[c] = points[positionOf[cand[c]]];
+			BoundingSphere seed = geofit.boundingSphere(cv);
+			for (int s = 0; s < seed.supportIndices.size(); s++)
+				seed.supportIndices.set(s, positionOf[cand[seed.supportIndices.get(s)]]);
+			setSphere(geofit.resume(seed, data()));
+		}
+		findCandidates();
+	}
+
+	/** Pick the points furthest from the current center as the candidates. */
+
+	private void findCandidates()
+	{
+		int[] far = data().farthest(sphere.center.x, sphere.center.y, sphere.center.z, candidateLimit, -1.0);
+		candidateCount = far.length;
+		for (int c = 0; c < far.length; c++)
+			candidates[c] = handleAt[far[c]];
+	}
+
+	/** Take a solver result, fitted to the dense positions, and turn its support indices to handles. */
+
+	private void setSphere(BoundingSphere bou)
+	{
+		for (int s = 0; s < bou.supportIndices.size(); s++)
+			bou.supportIndices.set(s, handleAt[bou.supportIndices.get(s)]);
+		sphere = bou;
+		radius2 = bou.radius*bou.radius;
+	}
+
+	/** A copy of the sphere with the support handles turned to the current positions. */
+
+	private BoundingSphere toPositions(BoundingSphere bou)
+	{
+		BoundingSphere p = new BoundingSphere(bou.center, bou.radius, bou.fit);
+		p.supportIndices = new ArrayList<Integer>();
+		for (int h : bou.supportIndices)
+			p.supportIndices.add(positionOf[h]);
+		return p;
+	}
+
+	private PointData data()
+	{
+		return new Vec3Points(points, count);
+	}
+
+	private int position(int handle)
+	{
+		if (handle < 0 || handle >= handleCount || positionOf[handle] < 0)
+			throw new IllegalArgumentException("No point with the handle " + handle);
+		return positionOf[handle];
+	}
+
+	private static boolean contains(int[] a, int n, int value)
+	{
+		for (int i = 0; i < n; i++)
+			if (a[i] == value)
+				return true;
+		return false;
+	}
+
+	private void grow()
+	{
+		int size = points.length*2;
+		Vec3[] p = new Vec3[size];
+		System.arraycopy(points, 0, p, 0, count);
+		points = p;
+		int[] h = new int[size];
+		System.arraycopy(handleAt, 0, h, 0, count);
+		handleAt = h;
+		int[] o = new int[size];
+		System.arraycopy(positionOf, 0, o, 0, positionOf.length);
+		positionOf = o;
+		int[] f = new int[size];
+		System.arraycopy(freeHandles, 0, f, 0, freeCount);
+		freeHandles = f;
+	}
+}
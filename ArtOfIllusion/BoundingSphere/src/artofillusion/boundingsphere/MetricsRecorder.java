@@ -0,0 +1,24 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+/**
+	A <b>MetricsRecorder</b> collects the <code>SolverMetrics</code> of the solves. A recorder may 
+	be called from several solving threads at the same time.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public interface MetricsRecorder
+{
+	/** Called by the solver at the end of each solve. */
+
+	public void record(SolverMetrics metrics);
+}
@@ -0,0 +1,57 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+	A Java Flight Recorder event for one pass of a solver through the data.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+@Name("artofillusion.boundingsphere.Pass")
+@Label("Bounding Sphere Pass")
+@Category({"Art of Illusion", "Bounding Sphere"})
+@Description("One pass of a bounding sphere solver through the data")
+@StackTrace(false)
+class PassEvent extends Event
+{
+	@Label("Solver")
+	String solver;
+
+	@Label("Points")
+	int points;
+
+	@Label("Pass")
+	int pass;
+
+	@Label("Supports")
+	int supports;
+
+	/** End the event and commit it, if it is being recorded. */
+
+	void finish(String solver, int points, int pass, int supports)
+	{
+		end();
+		if (! shouldCommit())
+			return;
+		this.solver = solver;
+		this.points = points;
+		this.pass = pass;
+		this.supports = supports;
+		commit();
+	}
+}
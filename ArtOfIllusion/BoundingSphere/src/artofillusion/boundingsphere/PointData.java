@@ -0,0 +1,83 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+
+/**
+	<b>PointData</b> is the storage of the points, that a solver scans through. The points
+	may be stored in a compact form, like single precision or quantized coordinates, to cut
+	down the bytes, that are read on each pass over a large cloud.<p>
+
+	A compact form loses accuracy. The stored points are what the solver sees and the 
+	<code>errorBound()</code> tells, how far from them the original points may be. The
+	solver adds it to the radius, so the sphere still encloses the original points.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public interface PointData
+{
+	/** The number of points. */
+
+	public int size();
+
+	/** The stored point at index <code>i</code>, in double precision. */
+
+	public Vec3 point(int i);
+
+	/** Write the bounding box of the stored points into <code>box</code> as min x, y, z and max x, y, z. */
+
+	public void bounds(double[] box);
+
+	/**
+		Find the point most distant from (x, y, z). The squared distance must be greater
+		than <code>limitDist2</code> or -1 is returned.
+	*/
+
+	public int mostDistant(double x, double y, double z, double limitDist2);
+
+	/**
+		Find the point most distant from (x, y, z) among the indices from <code>from</code> up 
+		to <code>to</code>, not included. The scan stops at the first point, whose squared 
+		distance is greater than <code>stopDist2</code>, and returns it. Returns -1 for an 
+		empty range.
+	*/
+
+	public int mostDistant(double x, double y, double z, int from, int to, double stopDist2);
+
+	/**
+		Find up to <code>k</code> points most distant from (x, y, z), in one pass. The squared 
+		distances must be greater than <code>limitDist2</code>. The indices are not sorted.
+	*/
+
+	public int[] farthest(double x, double y, double z, int k, double limitDist2);
+
+	/**
+		Project the points from <code>from</code> up to <code>to</code>, not included, on each of 
+		the directions <code>dir</code>. The smallest projection on direction d is written to 
+		<code>projection[d*2]</code> and the largest to <code>projection[d*2+1]</code>, the indices 
+		of the points, that have them, to the same places of <code>extreme</code>. An empty range
+		gives infinite projections.
+	*/
+
+	public void extremes(double[][] dir, int from, int to, int[] extreme, double[] projection);
+
+	/** 
+		Add the stored points in order to <code>hash</code>, as the doubles, that <code>point()</code>
+		would give, but read directly from the storage.
+	*/
+
+	public void hash(PointHash hash);
+
+	/** The largest distance between a stored point and the original point it represents. */
+
+	public double errorBound();
+}
@@ -0,0 +1,67 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+/**
+	<b>PointHash</b> collects the key of a point set for <code>SphereCache</code>. The storage
+	reads its points in its own form and adds them as doubles with <code>add()</code>, so the
+	same points give the same key, whatever <code>PointData</code> they are in.<p>
+
+	The points are hashed with two independent lanes of 64 bits. The three coordinates are
+	mixed into different states, so that the multiplications do not wait for each other.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public final class PointHash
+{
+	private static final long P1 = 0x9E3779B97F4A7C15L, P2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long P3 = 0x165667B19E3779F9L, P4 = 0xD6E8FEB86659FD93L;
+
+	private long a = P1, b = P2, c = P3, d = P4, e = P1^P4, f = P2^P3;
+
+	PointHash()
+	{}
+
+	/** Add the next point. */
+
+	public void add(double x, double y, double z)
+	{
+		long bx = Double.doubleToLongBits(x), by = Double.doubleToLongBits(y), bz = Double.doubleToLongBits(z);
+		a = Long.rotateLeft(a+bx*P2, 31)*P1;
+		b = Long.rotateLeft(b+by*P2, 31)*P1;
+		c = Long.rotateLeft(c+bz*P2, 31)*P1;
+		d = Long.rotateLeft(d^bx*P4, 27)*P3;
+		e = Long.rotateLeft(e^by*P4, 27)*P3;
+		f = Long.rotateLeft(f^bz*P4, 27)*P3;
+	}
+
+	/** The 128-bit key of the <code>n</code> points added, with the error bound of their storage. */
+
+	long[] key(int n, double errorBound)
+	{
+		long error = Double.doubleToLongBits(errorBound);
+		long h1 = mix(a+Long.rotateLeft(b, 21)+Long.rotateLeft(c, 42)+n*P3+error);
+		long h2 = mix(d^Long.rotateLeft(e, 19)^Long.rotateLeft(f, 38)^n*P1^error*P2);
+		return new long[] {h1, h2};
+	}
+
+	/** The final mix of MurmurHash3, so that every bit of the state affects every bit of the key. */
+
+	private static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,210 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+
+/**
+	<b>QuantizedPoints</b> keeps the points as 16-bit coordinates relative to their bounding
+	box. A pass over the data reads 6 bytes per point. The spacing of the grid is 1/65535 of 
+	the box size along each axis, so a point can be off by half of that on each axis.<p>
+
+	The stored points are decoded back to doubles for the distance calculations. The real 
+	distance between each original point and its decoded position is measured, when the 
+	data is quantized, and the largest one is the error bound.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class QuantizedPoints implements PointData
+{
+	private static final int STEPS = 65535;
+
+	private short[] q;
+	private double minX, minY, minZ, sx, sy, sz;
+	private double error;
+
+	/** Quantize an array of points. */
+
+	public QuantizedPoints(Vec3[] vertex)
+	{
+		this(new Vec3Points(vertex));
+	}
+
+	/** 
+		Quantize any point data, for example <code>FloatPoints</code>. The error bound of
+		the source is included in the error bound of the result.
+	*/
+
+	public QuantizedPoints(PointData source)
+	{
+		int n = source.size();
+		double[] box = new double[6];
+		source.bounds(box);
+		minX = box[0];
+		minY = box[1];
+		minZ = box[2];
+		sx = (box[3]-box[0])/STEPS;
+		sy = (box[4]-box[1])/STEPS;
+		sz = (box[5]-box[2])/STEPS;
+
+		q = new short[n*3];
+		double e2 = 0.0, dx, dy, dz;
+		Vec3 v;
+		for (int i = 0, j = 0; i < n; i++, j += 3)
+		{
+			v = source.point(i);
+			q[j]   = quantize(v.x, minX, sx);
+			q[j+1] = quantize(v.y, minY, sy);
+			q[j+2] = quantize(v.z, minZ, sz);
+			dx = v.x-(minX+(q[j]   & 0xffff)*sx);
+			dy = v.y-(minY+(q[j+1] & 0xffff)*sy);
+			dz = v.z-(minZ+(q[j+2] & 0xffff)*sz);
+			e2 = Math.max(e2, dx*dx+dy*dy+dz*dz);
+		}
+
+		// The measured differences are themselves rounded, so some room is left for that.
+
+		error = source.errorBound();
+		if (e2 > 0.0)
+			error += Math.nextUp(Math.sqrt(e2)*(1.0+1e-12));
+	}
+
+	private static short quantize(double c, double min, double step)
+	{
+		if (step == 0.0)
+			return 0;
+		long k = Math.round((c-min)/step);
+		return (short)Math.max(0, Math.min(STEPS, k));
+	}
+
+	public int size()
+	{
+		return q.length/3;
+	}
+
+	public Vec3 point(int i)
+	{
+		return new Vec3(minX+(q[i*3] & 0xffff)*sx, minY+(q[i*3+1] & 0xffff)*sy, minZ+(q[i*3+2] & 0xffff)*sz);
+	}
+
+	/** The box, that the grid was fitted to. No pass over the data is needed. */
+
+	public void bounds(double[] box)
+	{
+		box[0] = minX;
+		box[1] = minY;
+		box[2] = minZ;
+		box[3] = minX+STEPS*sx;
+		box[4] = minY+STEPS*sy;
+		box[5] = minZ+STEPS*sz;
+	}
+
+	public int mostDistant(double x, double y, double z, double limitDist2)
+	{
+		int mostDistant = -1;
+		double r2last = limitDist2;
+		double dx, dy, dz, r2v;
+		for (int j = 0; j < q.length; j += 3)
+		{
+			// Decoded exactly as in point(), so that the solver sees one set of points.
+
+			dx = (minX+(q[j]   & 0xffff)*sx)-x;
+			dy = (minY+(q[j+1] & 0xffff)*sy)-y;
+			dz = (minZ+(q[j+2] & 0xffff)*sz)-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = j/3;
+				r2last = r2v;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int mostDistant(double x, double y, double z, int from, int to, double stopDist2)
+	{
+		int mostDistant = -1;
+		double r2last = -1.0;
+		double dx, dy, dz, r2v;
+		for (int j = from*3; j < to*3; j += 3)
+		{
+			dx = (minX+(q[j]   & 0xffff)*sx)-x;
+			dy = (minY+(q[j+1] & 0xffff)*sy)-y;
+			dz = (minZ+(q[j+2] & 0xffff)*sz)-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = j/3;
+				r2last = r2v;
+				if (r2v > stopDist2)
+					break;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int[] farthest(double x, double y, double z, int k, double limitDist2)
+	{
+		Farthest far = new Farthest(k, limitDist2);
+		double dx, dy, dz, r2v;
+		for (int j = 0; j < q.length; j += 3)
+		{
+			dx = (minX+(q[j]   & 0xffff)*sx)-x;
+			dy = (minY+(q[j+1] & 0xffff)*sy)-y;
+			dz = (minZ+(q[j+2] & 0xffff)*sz)-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > far.threshold)
+				far.offer(j/3, r2v);
+		}
+		return far.indices();
+	}
+
+	public void extremes(double[][] dir, int from, int to, int[] extreme, double[] projection)
+	{
+		for (int d = 0; d < dir.length; d++)
+		{
+			projection[d*2] = Double.POSITIVE_INFINITY;
+			projection[d*2+1] = Double.NEGATIVE_INFINITY;
+		}
+		double x, y, z, s;
+		for (int i = from, j = from*3; i < to; i++, j += 3)
+		{
+			x = minX+(q[j]   & 0xffff)*sx;
+			y = minY+(q[j+1] & 0xffff)*sy;
+			z = minZ+(q[j+2] & 0xffff)*sz;
+			for (int d = 0; d < dir.length; d++)
+			{
+				s = dir[d][0]*x+dir[d][1]*y+dir[d][2]*z;
+				if (s < projection[d*2])
+				{
+					projection[d*2] = s;
+					extreme[d*2] = i;
+				}
+				if (s > projection[d*2+1])
+				{
+					projection[d*2+1] = s;
+					extreme[d*2+1] = i;
+				}
+			}
+		}
+	}
+
+	public void hash(PointHash hash)
+	{
+		for (int j = 0; j < q.length; j += 3)
+			hash.add(minX+(q[j] & 0xffff)*sx, minY+(q[j+1] & 0xffff)*sy, minZ+(q[j+2] & 0xffff)*sz);
+	}
+
+	public double errorBound()
+	{
+		return error;
+	}
+}
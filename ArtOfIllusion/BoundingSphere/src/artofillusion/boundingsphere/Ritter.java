@@ -11,6 +11,7 @@ import artofillusion.*;
 import artofillusion.math.*;
 import artofillusion.object.*;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
 
 /**
 	<b>Ritter2</b> is an implementation of "An efficient bounding sphere V.2" by Jack Ritter 1990, 
@@ -38,9 +39,15 @@ public class Ritter
 	private int fit, passes;
 	private long t0, t1;
 	private int mode;
+	private volatile boolean cancelled;
+	private SolverMetrics metrics;
+	private MetricsRecorder recorder;
+	private SolveEvent event;
 
 	/** Value for <code>mode()</code> */
-	public static int FIRST = 1, LAST = 2;
+	public static int FIRST = 1, LAST = 2, PARALLEL = 3, EPOS = 4;
+
+	private static final int GRAIN = 16384; // points per parallel chunk at least
 	
 	/** Create the solver */
 	
@@ -49,12 +56,50 @@ public class Ritter
 		mode = FIRST;
 	}
 
-	/** Set wether to use the first or the last found of similar points in 'pass1'. */
+	/**
+		Stop the solver. A solve, that is running in another thread, stops at the start of 
+		its next pass by throwing a <code>CancellationException</code>. If no solve is running, 
+		the next one stops at once.
+	*/
+
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/** Set a recorder, that receives the metrics of every solve. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/** 
+		Set wether to use the first or the last found of similar points in 'pass1'. 
+		Two more modes use all processors:<p>
+
+		<code>PARALLEL</code> finds the extremal points along the axes in parallel chunks, 
+		like <code>FIRST</code>. In the second pass each chunk grows a copy of the initial 
+		sphere over its points and the grown spheres are merged into one, that encloses all.<p>
+
+		<code>EPOS</code> finds the extremal points along 13 directions, instead of 3, and 
+		starts from the exact minimal sphere of those 26 points. The second pass is the one 
+		of <code>PARALLEL</code>. The initial sphere is often the final one and much closer 
+		to the minimal sphere than the one from the axes only.
+	*/
 	
 	public int mode(int mode)
 	{
-		if (mode == LAST)
-			this.mode = LAST;
+		if (mode == LAST || mode == PARALLEL || mode == EPOS)
+			this.mode = mode;
 		else
 			this.mode = FIRST;
 		return mode;
@@ -71,12 +116,8 @@ public class Ritter
 	
 	public BoundingSphere boundingSphere(Vec3[] vertex)
 	{
-		passes = 0;
-		if (mode == FIRST)
-			pass1(vertex);
-		else
-			pass1UseLast(vertex);
-		pass2(vertex);
+		startSolve();
+		solve(vertex);
 		if (radius == radiusAtPass1)
 			fit = BoundingSphere.EXACT;
 		else
@@ -88,6 +129,7 @@ public class Ritter
 		bou.passes = passes;
 		bou.metatext = "Created by Ritter1.boundingSphere()";
 		
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -96,34 +138,23 @@ public class Ritter
 	
 	public BoundingSphere boundingSphere(ObjectInfo info)
 	{
-		passes = 0;
+		startSolve();
 		if (info.getPreviewMesh() == null)
-		{
-			if (mode == FIRST)
-				pass1(info.getBounds().getCorners());
-			else
-				pass1UseLast(info.getBounds().getCorners());
-			pass2(info.getBounds().getCorners());
-		}
+			solve(info.getBounds().getCorners());
 		else
-		{
-			if (mode == FIRST)
-				pass1(info.getPreviewMesh().vert);
-			else
-				pass1UseLast(info.getPreviewMesh().vert);
-			pass2(info.getPreviewMesh().vert);
-		}
-		Mat4 toScene = info.getCoords().fromLocal();
+			solve(info.getPreviewMesh().vert);
 		if (radius == radiusAtPass1)
 			fit = BoundingSphere.EXACT;
 		else
 			fit = BoundingSphere.NON_MINIMAL;
-		BoundingSphere bou = new BoundingSphere(toScene.times(center), radius, fit, info.getId());
+		BoundingSphere bou = new BoundingSphere(new Vec3(center), radius, fit, info.getId());
+		SweptSphere.place(bou, info.getCoords().fromLocal());
 		bou.solverTime = (t1-t0)*1e-6;
 		bou.timeUnit = "millisecond";
 		bou.passes = passes;
 		bou.metatext = "Created by Ritter1.boundingSphere()";
 
+		finishSolve(bou);
 		return bou;
 	}
 
@@ -132,12 +163,14 @@ public class Ritter
 
 	public BoundingSphere boundingSphere(ArrayList<ObjectInfo> infoList)
 	{
-		passes = 0;
+		startSolve();
+		long tg = System.nanoTime();
 		ArrayList<Vec3> vertexList = new ArrayList<Vec3>();
 		Mat4 toScene;
 		Vec3[] vObj;
 		for (ObjectInfo info: infoList)
 		{
+			checkCancelled();
 			toScene = info.getCoords().fromLocal();
 			if (info.getPreviewMesh() == null)
 				vObj = info.getBounds().getCorners();
@@ -150,12 +183,9 @@ public class Ritter
 		Vec3[] vertex = new Vec3[vertexList.size()];
 		for(int i = 0; i < vertex.length; i++)
 			vertex[i] = vertexList.get(i);
+		metrics.gatherNanos = System.nanoTime()-tg;
 
-		if (mode == FIRST)
-			pass1(vertex);
-		else
-			pass1UseLast(vertex);
-		pass2(vertex);
+		solve(vertex);
 
 		BoundingSphere bou = new BoundingSphere(center, radius, fit);
 		bou.solverTime = (t1-t0)*1e-6;
@@ -163,13 +193,36 @@ public class Ritter
 		bou.passes = passes;
 		bou.metatext = "Created by Ritter1.boundingSphere()";
 		
+		finishSolve(bou);
 		return bou;
 	}
 
+	/** Run the passes of the current mode. */
+
+	private void solve(Vec3[] vertex)
+	{
+		if (mode == PARALLEL || mode == EPOS)
+		{
+			parallelPass1(vertex);
+			parallelPass2(vertex);
+		}
+		else
+		{
+			if (mode == FIRST)
+				pass1(vertex);
+			else
+				pass1UseLast(vertex);
+			pass2(vertex);
+		}
+	}
+
 	private void pass1(Vec3[] vertex)
 	{
 		passes++;
+		checkCancelled();
 		t0 = System.nanoTime();
+		PassEvent passEvent = new PassEvent();
+		passEvent.begin();
 		vMinX = vMaxX = vMinY =  vMaxY = vMinZ = vMaxZ = vertex[0];
 		
 		for (Vec3 v: vertex)
@@ -196,12 +249,19 @@ public class Ritter
 		center = A.plus(B).times(0.5);
 		radius = Math.max(center.distance(A), center.distance(B));
 		radiusAtPass1 = radius;
+		metrics.points = vertex.length;
+		metrics.pointsScanned += vertex.length;
+		metrics.initNanos = System.nanoTime()-t0;
+		passEvent.finish(metrics.solver, vertex.length, passes, 2);
 	}
 
 	private void pass1UseLast(Vec3[] vertex)
 	{
 		passes++;
+		checkCancelled();
 		t0 = System.nanoTime();
+		PassEvent passEvent = new PassEvent();
+		passEvent.begin();
 		vMinX = vMaxX = vMinY =  vMaxY = vMinZ = vMaxZ = vertex[0];
 		
 		for (Vec3 v: vertex)
@@ -228,11 +288,19 @@ public class Ritter
 		center = A.plus(B).times(0.5);
 		radius = Math.max(center.distance(A), center.distance(B));
 		radiusAtPass1 = radius;
+		metrics.points = vertex.length;
+		metrics.pointsScanned += vertex.length;
+		metrics.initNanos = System.nanoTime()-t0;
+		passEvent.finish(metrics.solver, vertex.length, passes, 2);
 	}
 
 	private void pass2(Vec3[] vertex)
 	{
 		passes++;
+		checkCancelled();
+		long t2 = System.nanoTime();
+		PassEvent passEvent = new PassEvent();
+		passEvent.begin();
 		double r2 = radius*radius;
 		double r2v, move, rv;
 		Vec3 vFromCenter;
@@ -247,8 +315,199 @@ public class Ritter
 				r2 = radius*radius;
 				move = rv-radius;
 				center = (center.times(radius).plus(v.times(move))).times(1.0/rv);
+				metrics.supportChanges++;
 			}
 		}
 		t1 = System.nanoTime();
+		metrics.pointsScanned += vertex.length;
+		metrics.rescanNanos = t1-t2;
+		passEvent.finish(metrics.solver, vertex.length, passes, 0);
+	}
+
+	/**
+		Find the extremal points along the directions of the mode in parallel chunks and 
+		set the initial sphere. Of equal projections the first found is kept.
+	*/
+
+	private void parallelPass1(final Vec3[] vertex)
+	{
+		passes++;
+		checkCancelled();
+		t0 = System.nanoTime();
+		PassEvent passEvent = new PassEvent();
+		passEvent.begin();
+
+		final double[][] dir = (mode == EPOS ? Directions.EPOS26 : Directions.AXES);
+		final int chunks = Chunks.count(vertex.length, GRAIN);
+		final int[][] extreme = new int[chunks][];
+		final double[][] projection = new double[chunks][];
+		Chunks.run(vertex.length, GRAIN, (chunk, from, to) ->
+		{
+			int[] e = new int[dir.length*2];
+			double[] p = new double[dir.length*2];
+			for (int d = 0; d < dir.length; d++)
+			{
+				e[d*2] = e[d*2+1] = from;
+				p[d*2] = p[d*2+1] = dir[d][0]*vertex[from].x+dir[d][1]*vertex[from].y+dir[d][2]*vertex[from].z;
+			}
+			for (int i = from; i < to; i++)
+			{
+				Vec3 v = vertex[i];
+				for (int d = 0; d < dir.length; d++)
+				{
+					double s = dir[d][0]*v.x+dir[d][1]*v.y+dir[d][2]*v.z;
+					if (s < p[d*2])
+					{
+						p[d*2] = s;
+						e[d*2] = i;
+					}
+					if (s > p[d*2+1])
+					{
+						p[d*2+1] = s;
+						e[d*2+1] = i;
+					}
+				}
+			}
+			extreme[chunk] = e;
+			projection[chunk] = p;
+		});
+
+		int[] e = extreme[0];
+		double[] p = projection[0];
+		for (int c = 1; c < chunks; c++)
+			for (int k = 0; k < e.length; k += 2)
+			{
+				if (projection[c][k] < p[k])
+				{
+					p[k] = projection[c][k];
+					e[k] = extreme[c][k];
+				}
+				if (projection[c][k+1] > p[k+1])
+				{
+					p[k+1] = projection[c][k+1];
+					e[k+1] = extreme[c][k+1];
+				}
+			}
+
+		if (mode == EPOS)
+		{
+			// The exact sphere of the extremal points.
+
+			Vec3[] point = new Vec3[e.length];
+			for (int k = 0; k < e.length; k++)
+				point[k] = vertex[e[k]];
+			BoundingSphere initial = new GeoFit().boundingSphere(point);
+			center = initial.center;
+			radius = initial.radius;
+		}
+		else
+		{
+			// The most distant pair, like in 'pass1'.
+
+			Vec3 A = vertex[e[0]], B = vertex[e[1]];
+			for (int k = 2; k < e.length; k += 2)
+				if (A.distance2(B) < vertex[e[k]].distance2(vertex[e[k+1]]))
+				{
+					A = vertex[e[k]];
+					B = vertex[e[k+1]];
+				}
+			center = A.plus(B).times(0.5);
+			radius = Math.max(center.distance(A), center.distance(B));
+		}
+		radiusAtPass1 = radius;
+		metrics.points = vertex.length;
+		metrics.pointsScanned += vertex.length;
+		metrics.initNanos = System.nanoTime()-t0;
+		passEvent.finish(metrics.solver, vertex.length, passes, 2);
+	}
+
+	/**
+		Grow a copy of the initial sphere over each chunk, like in 'pass2', and merge the
+		grown spheres into one, that encloses them all.
+	*/
+
+	private void parallelPass2(final Vec3[] vertex)
+	{
+		passes++;
+		checkCancelled();
+		long t2 = System.nanoTime();
+		PassEvent passEvent = new PassEvent();
+		passEvent.begin();
+
+		final int chunks = Chunks.count(vertex.length, GRAIN);
+		final double[][] grown = new double[chunks][];
+		final double cx0 = center.x, cy0 = center.y, cz0 = center.z, r0 = radius;
+		Chunks.run(vertex.length, GRAIN, (chunk, from, to) ->
+		{
+			double cx = cx0, cy = cy0, cz = cz0, r = r0, r2 = r0*r0;
+			int changes = 0;
+			for (int i = from; i < to; i++)
+			{
+				Vec3 v = vertex[i];
+				double dx = v.x-cx, dy = v.y-cy, dz = v.z-cz;
+				double d2 = dx*dx+dy*dy+dz*dz;
+				if (d2 > r2)
+				{
+					double d = Math.sqrt(d2);
+					r = (r+d)*0.5;
+					r2 = r*r;
+					double move = d-r;
+					cx = (cx*r+v.x*move)/d;
+					cy = (cy*r+v.y*move)/d;
+					cz = (cz*r+v.z*move)/d;
+					changes++;
+				}
+			}
+			grown[chunk] = new double[] {cx, cy, cz, r, changes};
+		});
+
+		BoundingSphere merged = null;
+		for (double[] g : grown)
+		{
+			BoundingSphere s = new BoundingSphere(new Vec3(g[0], g[1], g[2]), g[3]);
+			merged = (merged == null ? s : merged.enclose(s));
+			metrics.supportChanges += (int)g[4];
+		}
+		center = merged.center;
+		radius = merged.radius;
+		t1 = System.nanoTime();
+		metrics.pointsScanned += vertex.length;
+		metrics.rescanNanos = t1-t2;
+		passEvent.finish(metrics.solver, vertex.length, passes, 0);
+	}
+
+	/** Reset the counters for a new solve. */
+
+	private void startSolve()
+	{
+		passes = 0;
+		metrics = new SolverMetrics(mode == FIRST ? "Ritter.FIRST" : mode == LAST ? "Ritter.LAST" : 
+		                            mode == PARALLEL ? "Ritter.PARALLEL" : "Ritter.EPOS");
+		event = new SolveEvent();
+		event.begin();
+	}
+
+	/** Attach the metrics to the result and hand them to the recorder. */
+
+	private void finishSolve(BoundingSphere bou)
+	{
+		metrics.passes = passes;
+		metrics.totalNanos = t1-t0;
+		metrics.countAllocation();
+		bou.metrics = metrics;
+		if (recorder != null)
+			recorder.record(metrics);
+		event.finish(bou, metrics);
+	}
+
+	/** Throw, if the solver has been cancelled. The request is cleared, so the solver can be used again. */
+
+	private void checkCancelled()
+	{
+		if (cancelled)
+		{
+			cancelled = false;
+			throw new CancellationException();
+		}
 	}
 }
@@ -0,0 +1,330 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+	<b>SceneSpheres</b> keeps the bounding spheres of all the objects of a scene in a
+	<code>SphereTree</code>, so that picking, selecting by a view frustum, finding the objects,
+	that may collide, and bounding a group of objects are answered from the tree, without
+	reading the meshes again.<p>
+
+	The sphere of each object is solved once by <code>GeoFit</code> in the local coordinates
+	of the object and then placed by its transform, as in <code>SweptSphere</code>. The meshes
+	are solved in parallel on the shared pool of <code>AsyncSolver</code>, when the scene is
+	loaded. When an object is moved, only its sphere is placed again. When its geometry changes,
+	only its mesh is solved again. In both cases only the tree nodes above it are refitted.<p>
+
+	Moving objects far from the ones they were grouped with makes the tree slower, though not
+	wrong. When the cost of the tree has grown by half from what it was after the last build,
+	or objects have been added or removed, the tree is built again at the next query.<p>
+
+	The methods are synchronized, so the changes and the queries may come from different threads.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SceneSpheres
+{
+	// The tree is built again, when its cost has grown by this factor.
+
+	private static final double REBUILD = 1.5;
+
+	private ArrayList<ObjectInfo> objects = new ArrayList<ObjectInfo>();
+	private ArrayList<SweptSphere> local = new ArrayList<SweptSphere>();
+	private IdentityHashMap<ObjectInfo, Integer> index = new IdentityHashMap<ObjectInfo, Integer>();
+	private SphereSet set = new SphereSet();
+	private SphereTree tree;
+	private double builtCost;
+	private boolean refitted;
+	private int builds;
+
+	/** Create an empty hierarchy. */
+
+	public SceneSpheres()
+	{}
+
+	/** Create the hierarchy of the objects, for example of <code>Scene.getAllObjects()</code>. */
+
+	public SceneSpheres(List<ObjectInfo> objects)
+	{
+		addAll(objects);
+	}
+
+	/** Add an object. */
+
+	public synchronized void add(ObjectInfo info)
+	{
+		ArrayList<ObjectInfo> one = new ArrayList<ObjectInfo>();
+		one.add(info);
+		addAll(one);
+	}
+
+	/** Add objects. Their meshes are solved in parallel. */
+
+	public synchronized void addAll(final List<ObjectInfo> added)
+	{
+		final SweptSphere[] solved = new SweptSphere[added.size()];
+		Chunks.run(solved.length, 1, (chunk, from, to) ->
+		{
+			for (int i = from; i < to; i++)
+				solved[i] = new SweptSphere(added.get(i));
+		});
+		for (int i = 0; i < solved.length; i++)
+		{
+			ObjectInfo info = added.get(i);
+			if (index.containsKey(info))
+				continue;
+			index.put(info, objects.size());
+			objects.add(info);
+			local.add(solved[i]);
+			set.add(solved[i].at(info.getCoords().fromLocal()));
+		}
+		tree = null;
+	}
+
+	/** Remove an object. Returns <code>false</code>, if it was not in the hierarchy. */
+
+	public synchronized boolean remove(ObjectInfo info)
+	{
+		Integer i = index.remove(info);
+		if (i == null)
+			return false;
+
+		// The last one takes the place of the removed one.
+
+		int last = objects.size()-1;
+		if (i != last)
+		{
+			objects.set(i, objects.get(last));
+			local.set(i, local.get(last));
+			set.set(i, set.x[last], set.y[last], set.z[last], set.r[last]);
+			index.put(objects.get(i), i);
+		}
+		objects.remove(last);
+		local.remove(last);
+		set.count--;
+		tree = null;
+		return true;
+	}
+
+	/** The number of objects. */
+
+	public synchronized int size()
+	{
+		return objects.size();
+	}
+
+	/** Check if the object is in the hierarchy. */
+
+	public synchronized boolean contains(ObjectInfo info)
+	{
+		return index.containsKey(info);
+	}
+
+	/** The sphere of the object in the scene, or <code>null</code>, if it is not in the hierarchy. */
+
+	public synchronized BoundingSphere sphere(ObjectInfo info)
+	{
+		Integer i = index.get(info);
+		if (i == null)
+			return null;
+		return local.get(i).at(info.getCoords().fromLocal());
+	}
+
+	/** Place the spheres of the objects again after their coordinates have changed. */
+
+	public synchronized void moved(ObjectInfo... infos)
+	{
+		int[] changed = indices(infos);
+		for (int i : changed)
+			place(i);
+		refit(changed);
+	}
+
+	/** Solve the spheres of the objects again after their geometry has changed. */
+
+	public synchronized void changed(ObjectInfo... infos)
+	{
+		final int[] changed = indices(infos);
+		Chunks.run(changed.length, 1, (chunk, from, to) ->
+		{
+			for (int k = from; k < to; k++)
+				local.set(changed[k], new SweptSphere(objects.get(changed[k])));
+		});
+		for (int i : changed)
+			place(i);
+		refit(changed);
+	}
+
+	/** The object, that the ray hits first, or <code>null</code>, if the ray misses all. */
+
+	public synchronized ObjectInfo pick(Vec3 origin, Vec3 direction)
+	{
+		int hit = tree().nearest(origin, direction, null);
+		return (hit < 0 ? null : objects.get(hit));
+	}
+
+	/** The objects, that the ray hits, from the nearest to the farthest. */
+
+	public synchronized ArrayList<ObjectInfo> hits(Vec3 origin, Vec3 direction)
+	{
+		return list(tree().hits(origin, direction));
+	}
+
+	/**
+		The objects, that are at least partly inside the view frustum. The planes are given
+		as in <code>SphereSet.classify()</code>.
+	*/
+
+	public synchronized ArrayList<ObjectInfo> visible(Vec3[] normal, double[] offset)
+	{
+		byte[] result = new byte[objects.size()];
+		tree().classify(normal, offset, result);
+		ArrayList<ObjectInfo> found = new ArrayList<ObjectInfo>();
+		for (int i = 0; i < result.length; i++)
+			if (result[i] != SphereSet.OUTSIDE)
+				found.add(objects.get(i));
+		return found;
+	}
+
+	/** The objects, whose spheres overlap the given sphere. */
+
+	public synchronized ArrayList<ObjectInfo> overlapping(BoundingSphere sphere)
+	{
+		return list(tree().overlapping(sphere.center, sphere.radius));
+	}
+
+	/** The other objects, whose spheres overlap the sphere of the object. They may collide with it. */
+
+	public synchronized ArrayList<ObjectInfo> collisions(ObjectInfo info)
+	{
+		Integer i = index.get(info);
+		if (i == null)
+			return new ArrayList<ObjectInfo>();
+		ArrayList<ObjectInfo> found = list(tree().overlapping(new Vec3(set.x[i], set.y[i], set.z[i]), set.r[i]));
+		found.remove(info);
+		return found;
+	}
+
+	/**
+		A sphere, that encloses the spheres of the objects, without reading their meshes. It is
+		the smaller of two bounds: the spheres grown around the smallest sphere of their centers,
+		and the spheres enclosed one by one from the largest. It is <code>NON_MINIMAL</code>
+		for the points of the objects. Objects, that are not in the hierarchy, are left out.
+
+		@return the sphere, or <code>null</code>, if none of the objects is in the hierarchy
+	*/
+
+	public synchronized BoundingSphere boundingSphere(Collection<ObjectInfo> infos)
+	{
+		long t0 = System.nanoTime();
+		int[] member = indices(infos.toArray(new ObjectInfo[infos.size()]));
+		if (member.length == 0)
+			return null;
+
+		Vec3[] centers = new Vec3[member.length];
+		int largest = member[0];
+		for (int k = 0; k < member.length; k++)
+		{
+			int i = member[k];
+			centers[k] = new Vec3(set.x[i], set.y[i], set.z[i]);
+			if (set.r[i] > set.r[largest])
+				largest = i;
+		}
+		Vec3 c = new GeoFit().boundingSphere(centers).center;
+		double r = 0.0;
+		for (int k = 0; k < member.length; k++)
+			r = Math.max(r, c.distance(centers[k])+set.r[member[k]]);
+		BoundingSphere bou = new BoundingSphere(c, Math.nextUp(r), BoundingSphere.NON_MINIMAL);
+
+		BoundingSphere chain = set.sphere(largest);
+		for (int i : member)
+			chain = chain.enclose(set.sphere(i));
+		if (chain.radius < bou.radius)
+			bou = chain;
+
+		bou.fit = BoundingSphere.NON_MINIMAL;
+		bou.solverTime = (System.nanoTime()-t0)*1e-6;
+		bou.timeUnit = "millisecond";
+		bou.metatext = "Created by SceneSpheres.boundingSphere()";
+		return bou;
+	}
+
+	/** The tree, built again first, if objects were added or removed or it has got too slow. */
+
+	public synchronized SphereTree tree()
+	{
+		if (tree != null && refitted)
+		{
+			refitted = false;
+			if (tree.cost() > builtCost*REBUILD)
+				tree = null;
+		}
+		if (tree == null)
+		{
+			tree = new SphereTree(set);
+			builtCost = tree.cost();
+			builds++;
+		}
+		return tree;
+	}
+
+	/** The number of times the tree has been built. */
+
+	public synchronized int builds()
+	{
+		return builds;
+	}
+
+	private void place(int i)
+	{
+		BoundingSphere bou = local.get(i).at(objects.get(i).getCoords().fromLocal());
+		set.set(i, bou.center.x, bou.center.y, bou.center.z, bou.radius);
+	}
+
+	private void refit(int[] changed)
+	{
+		if (tree == null)
+			return;
+		tree.refit(changed);
+		refitted = true;
+	}
+
+	/** The indices of the objects, that are in the hierarchy. */
+
+	private int[] indices(ObjectInfo[] infos)
+	{
+		int[] found = new int[infos.length];
+		int n = 0;
+		for (ObjectInfo info : infos)
+		{
+			Integer i = index.get(info);
+			if (i != null)
+				found[n++] = i;
+		}
+		return Arrays.copyOf(found, n);
+	}
+
+	private ArrayList<ObjectInfo> list(int[] found)
+	{
+		ArrayList<ObjectInfo> list = new ArrayList<ObjectInfo>(found.length);
+		for (int i : found)
+			list.add(objects.get(i));
+		return list;
+	}
+}
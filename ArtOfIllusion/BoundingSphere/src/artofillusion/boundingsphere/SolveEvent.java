@@ -0,0 +1,68 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+	A Java Flight Recorder event for one complete solve. The duration of the event
+	is the solver time. When the event is not being recorded, the cost is a check of
+	a flag at the end of the solve.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+@Name("artofillusion.boundingsphere.Solve")
+@Label("Bounding Sphere Solve")
+@Category({"Art of Illusion", "Bounding Sphere"})
+@Description("One solve of a bounding sphere")
+@StackTrace(false)
+class SolveEvent extends Event
+{
+	@Label("Solver")
+	String solver;
+
+	@Label("Points")
+	int points;
+
+	@Label("Passes")
+	int passes;
+
+	@Label("Supports")
+	int supports;
+
+	@Label("Fit")
+	String fit;
+
+	@Label("Radius")
+	double radius;
+
+	/** End the event and commit it, if it is being recorded. */
+
+	void finish(BoundingSphere bou, SolverMetrics metrics)
+	{
+		end();
+		if (! shouldCommit())
+			return;
+		solver = metrics.solver;
+		points = metrics.points;
+		passes = metrics.passes;
+		supports = (bou.supportPositions == null ? 0 : bou.supportPositions.size());
+		fit = (bou.fit == BoundingSphere.EXACT ? "EXACT" : bou.fit == BoundingSphere.NON_MINIMAL ? "NON_MINIMAL" :
+		       bou.fit == BoundingSphere.APPROXIMATE ? "APPROXIMATE" : "UNKNOWN");
+		radius = bou.radius;
+		commit();
+	}
+}
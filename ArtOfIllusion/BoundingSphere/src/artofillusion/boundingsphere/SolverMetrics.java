@@ -0,0 +1,111 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+	<b>SolverMetrics</b> tells where the time of a single solve went. The solver fills it in 
+	and attaches it to the <code>BoundingSphere</code> it creates. If the solver has a
+	<code>MetricsRecorder</code>, the metrics are also handed to that.<p>
+
+	The phases are those of <code>GeoFit</code>: gathering the vertices of a group of objects, 
+	the initializing passes and the completing phase, which is split into checking the 
+	subgroups of the supports and rescanning the data. For <code>Ritter</code> the first 
+	pass is counted as the initializing phase and the second as a rescan. For <code>Welzl</code>
+	the pivot scans are the rescans and the move-to-front steps are counted as subgroup time.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SolverMetrics
+{
+	/** Name of the solver, that produced the metrics. */
+	public String solver;
+
+	/** Number of points the solve was given. */
+	public int points;
+
+	/** Time spent in each phase in nanoseconds. <code>totalNanos</code> excludes the gathering. */
+	public long gatherNanos, initNanos, subGroupNanos, rescanNanos, totalNanos;
+
+	/** Number of points read during all the passes. */
+	public long pointsScanned;
+
+	/** Passes through the data, changes to the support set and the calls to check the subgroups. */
+	public int passes, supportChanges, subGroupChecks;
+
+	/** Bytes allocated by the solving thread, or -1 if the JVM can not tell. */
+	public long bytesAllocated;
+
+	private long allocatedAtStart;
+
+	/** Create empty metrics for the named solver. */
+
+	public SolverMetrics(String solver)
+	{
+		this.solver = solver;
+		bytesAllocated = -1;
+		allocatedAtStart = allocatedBytes();
+	}
+
+	/** Set the allocated bytes counted from the creation of the metrics. */
+
+	void countAllocation()
+	{
+		long now = allocatedBytes();
+		if (now >= 0 && allocatedAtStart >= 0)
+			bytesAllocated = now-allocatedAtStart;
+	}
+
+	/** The bytes allocated by the current thread so far, or -1 if not available. */
+
+	private static long allocatedBytes()
+	{
+		com.sun.management.ThreadMXBean threads = Allocation.THREADS;
+		if (threads == null)
+			return -1;
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/** 
+		Holds the thread bean. It is looked up, when the first solve needs it, and the class 
+		loading makes that safe without a lock on every solve.
+	*/
+
+	private static final class Allocation
+	{
+		/** The bean, or <code>null</code> if the allocations of a thread can not be counted. */
+		static final com.sun.management.ThreadMXBean THREADS = lookUp();
+
+		private static com.sun.management.ThreadMXBean lookUp()
+		{
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (threads instanceof com.sun.management.ThreadMXBean &&
+			    ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported() &&
+			    ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemoryEnabled())
+				return (com.sun.management.ThreadMXBean)threads;
+			return null;
+		}
+	}
+
+	/** Get a verbal description of the metrics */
+
+	@Override
+	public String toString()
+	{
+		return "SolverMetrics[" + solver + " points: " + points + " passes: " + passes +
+		       " scanned: " + pointsScanned + " gather: " + gatherNanos + "ns init: " + initNanos +
+		       "ns subgroups: " + subGroupNanos + "ns rescans: " + rescanNanos + "ns total: " + totalNanos +
+		       "ns support changes: " + supportChanges + " subgroup checks: " + subGroupChecks +
+		       " allocated: " + bytesAllocated + "]";
+	}
+}
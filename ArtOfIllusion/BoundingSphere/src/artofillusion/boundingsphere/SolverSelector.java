@@ -0,0 +1,398 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+	<b>SolverSelector</b> picks the solver for the caller from the required tightness of the
+	sphere, an optional latency budget and the number of points.<p>
+
+	<ul>
+	<li><code>EXACT</code> always uses <code>GeoFit.boundingSphere()</code>. With a latency 
+	budget the solve is stopped when the budget runs out and the result may be <code>NON_MINIMAL</code>.</li>
+	<li><code>EPSILON</code> uses <code>GeoFit</code>, that stops as soon as the sphere is known 
+	to be within epsilon of the minimal one. The box center sphere of <code>fastSphere()</code>
+	is never more than sqrt(3) times the minimal one, so with epsilon of at least 
+	sqrt(3)-1 it is used instead, in parallel for very large sets. Large <code>Vec3</code> arrays 
+	are converted to <code>FloatPoints</code>, if the rounding error is small compared to epsilon,
+	as the passes then read less memory.</li>
+	<li><code>ANY</code> uses the solver, that is expected to be the fastest: <code>fastSphere()</code>, 
+	<code>Ritter</code> or, for very large sets, <code>fastSphere()</code> in parallel on the 
+	shared pool of <code>AsyncSolver</code>.</li>
+	</ul>
+
+	The expected times come from the metrics of the earlier solves of this selector, kept as 
+	nanoseconds per point for each solver and each power of two of the point count. Until a 
+	solver has been measured at some size, rough figures from the benchmarks are used. The 
+	counts of the choices, that were made, are kept, and the latest choice can be checked 
+	as text. A selector may be shared by threads.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SolverSelector
+{
+	/** Tightness */
+	public static final int EXACT = 0, EPSILON = 1, ANY = 2;
+
+	private static final String GEOFIT = "GeoFit", FAST = "GeoFit.fastSphere", RITTER = "Ritter.FIRST",PARALLEL = "GeoFit.fastSphere.parallel";
+	private static final String[] SOLVERS = {GEOFIT, FAST, RITTER, PARALLEL};
+	private static final int GEOFIT_INDEX = 0, FAST_INDEX = 1, RITTER_INDEX = 2, PARALLEL_INDEX = 3;
+
+	// Nanoseconds per point, before anything is measured. From Benchmarking.md, the 
+	// parallel one is guessed from the threads.
+
+	private static final double[] PRIOR = {63.0, 26.0, 22.0, 26.0};
+	private static final double PARALLEL_OVERHEAD = 50000.0; // nanoseconds
+
+	private static final int PARALLEL_POINTS = 1 << 20, LAYOUT_POINTS = 1 << 18;
+	private static final double SQRT3_1 = Math.sqrt(3.0)-1.0;
+	private static final double WEIGHT = 0.2; // of a new measurement in the running average
+
+	private double[][] nanosPerPoint = new double[SOLVERS.length][32];
+	private int threads;
+	private ConcurrentHashMap<String, LongAdder> choices = new ConcurrentHashMap<String, LongAdder>();
+	private volatile String lastChoice;
+	private MetricsRecorder recorder;
+	private MetricsRecorder learner = new MetricsRecorder()
+	{
+		public void record(SolverMetrics metrics)
+		{
+			learn(metrics);
+			MetricsRecorder r = recorder;
+			if (r != null)
+				r.record(metrics);
+		}
+	};
+
+	/** Create a selector, that may use all processors for the parallel solves. */
+
+	public SolverSelector()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Create a selector, that uses at most the given number of threads. */
+
+	public SolverSelector(int threads)
+	{
+		this.threads = Math.max(1, threads);
+	}
+
+	/** Set a recorder, that receives the metrics of every solve. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/**
+		Solve a sphere for the points.
+
+		@param vertex     the points to enclose
+		@param tightness  <code>EXACT</code>, <code>EPSILON</code> or <code>ANY</code>
+		@param epsilon    the allowed relative excess of the radius for <code>EPSILON</code>
+		@param latency    the time budget in milliseconds, 0 for none
+	*/
+
+	public BoundingSphere boundingSphere(Vec3[] vertex, int tightness, double epsilon, double latency)
+	{
+		return solve(new Vec3Points(vertex), vertex, tightness, epsilon, latency);
+	}
+
+	/**
+		Solve a sphere for points in any storage. <code>Ritter</code> is only used for 
+		<code>Vec3</code> arrays.
+	*/
+
+	public BoundingSphere boundingSphere(PointData data, int tightness, double epsilon, double latency)
+	{
+		return solve(data, null, tightness, epsilon, latency);
+	}
+
+	/** The latest choice as text. */
+
+	public String lastChoice()
+	{
+		return lastChoice;
+	}
+
+	/** The number of times each choice has been made. */
+
+	public Map<String, Long> choices()
+	{
+		TreeMap<String, Long> map = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> e : choices.entrySet())
+			map.put(e.getKey(), e.getValue().sum());
+		return map;
+	}
+
+	/** The expected time of a solver for <code>n</code> points in milliseconds. */
+
+	public double predict(String solver, int n)
+	{
+		for (int s = 0; s < SOLVERS.length; s++)
+			if (SOLVERS[s].equals(solver))
+				return predictNanos(s, n)*1e-6;
+		throw new IllegalArgumentException("Unknown solver " + solver);
+	}
+
+	private BoundingSphere solve(PointData data, Vec3[] vertex, int tightness, double epsilon, double latency)
+	{
+		int n = data.size();
+		double timeLimit = (latency > 0.0 ? latency : Double.POSITIVE_INFINITY);
+		String layout = data.getClass().getSimpleName();
+		BoundingSphere bou;
+		String choice;
+
+		if (tightness == EXACT || (tightness == EPSILON && epsilon < SQRT3_1))
+		{
+			GeoFit geofit = new GeoFit();
+			geofit.recorder(learner);
+			if (tightness == EXACT)
+			{
+				if (latency > 0.0)
+					bou = geofit.boundingSphere(data, 0.0, timeLimit, Integer.MAX_VALUE, null);
+				else
+					bou = geofit.boundingSphere(data);
+				choice = GEOFIT;
+			}
+			else
+			{
+				// Read floats, if the rounding takes less than a tenth of the allowance. The 
+				// minimal radius is at least a half of the longest edge of the bounding box.
+
+				if (vertex != null && n >= LAYOUT_POINTS)
+				{
+					FloatPoints floats = new FloatPoints(vertex);
+					double[] box = new double[6];
+					floats.bounds(box);
+					double edge = Math.max(box[3]-box[0], Math.max(box[4]-box[1], box[5]-box[2]));
+					if (floats.errorBound() <= 0.1*epsilon*0.5*edge)
+					{
+						data = floats;
+						layout = "FloatPoints";
+						epsilon = (epsilon*0.5*edge-floats.errorBound())/(0.5*edge);
+					}
+				}
+				bou = geofit.boundingSphere(data, epsilon, timeLimit, Integer.MAX_VALUE, null);
+				choice = GEOFIT + " epsilon";
+			}
+		}
+		else
+		{
+			// Any of the fast ones will do, but only the box center spheres are known to be 
+			// within sqrt(3). A solver, that has not been measured at this size yet, is tried 
+			// once, so that the estimates do not stay at the priors.
+
+			int[] candidates = {FAST_INDEX, RITTER_INDEX, PARALLEL_INDEX};
+			int best = -1;
+			double bestTime = Double.POSITIVE_INFINITY;
+			for (int s : candidates)
+			{
+				if ((s == RITTER_INDEX && (vertex == null || tightness != ANY)) || (s == PARALLEL_INDEX && (threads < 2 || n < PARALLEL_POINTS)))
+					continue;
+				if (! measured(s, n))
+				{
+					best = s;
+					break;
+				}
+				double time = predictNanos(s, n);
+				if (time < bestTime)
+				{
+					best = s;
+					bestTime = time;
+				}
+			}
+
+			if (best == RITTER_INDEX)
+			{
+				Ritter ritter = new Ritter();
+				ritter.recorder(learner);
+				bou = ritter.boundingSphere(vertex);
+			}
+			else if (best == PARALLEL_INDEX)
+				bou = parallelFastSphere(data);
+			else
+			{
+				GeoFit geofit = new GeoFit();
+				geofit.recorder(learner);
+				bou = geofit.fastSphere(data);
+			}
+			choice = SOLVERS[best] + (best == PARALLEL_INDEX ? " x" + threads : "");
+		}
+
+		choice = choice + ", " + layout;
+		choices.computeIfAbsent(choice, k -> new LongAdder()).increment();
+		lastChoice = choice + ", " + n + " points";
+		bou.metatext = bou.metatext + ", chosen by SolverSelector";
+		return bou;
+	}
+
+	/** Take a measurement into the running average of its solver and size. */
+
+	private void learn(SolverMetrics metrics)
+	{
+		if (metrics.points <= 0)
+			return;
+		for (int s = 0; s < SOLVERS.length; s++)
+			if (SOLVERS[s].equals(metrics.solver))
+			{
+				double perPoint = (double)metrics.totalNanos/metrics.points;
+				int b = bucket(metrics.points);
+				synchronized (nanosPerPoint)
+				{
+					double old = nanosPerPoint[s][b];
+					nanosPerPoint[s][b] = (old > 0.0 ? old+WEIGHT*(perPoint-old) : perPoint);
+				}
+				return;
+			}
+	}
+
+	/** Check, if the solver has been measured at the size of <code>n</code>. */
+
+	private boolean measured(int s, int n)
+	{
+		synchronized (nanosPerPoint)
+		{
+			return nanosPerPoint[s][bucket(n)] > 0.0;
+		}
+	}
+
+	/** The expected nanoseconds from the nearest measured size, or from the prior. */
+
+	private double predictNanos(int s, int n)
+	{
+		int b = bucket(n);
+		double perPoint = 0.0;
+		synchronized (nanosPerPoint)
+		{
+			for (int d = 0; d < 32 && perPoint == 0.0; d++)
+			{
+				if (b-d >= 0 && nanosPerPoint[s][b-d] > 0.0)
+					perPoint = nanosPerPoint[s][b-d];
+				else if (b+d < 32 && nanosPerPoint[s][b+d] > 0.0)
+					perPoint = nanosPerPoint[s][b+d];
+			}
+		}
+		if (perPoint > 0.0)
+			return perPoint*n;
+		if (s == PARALLEL_INDEX)
+			return PRIOR[s]*n/threads+PARALLEL_OVERHEAD;
+		return PRIOR[s]*n;
+	}
+
+	private static int bucket(int n)
+	{
+		return 31-Integer.numberOfLeadingZeros(Math.max(1, n));
+	}
+
+	/** 
+		The same sphere as <code>fastSphere()</code>, with both passes split into chunks,
+		that are run on the shared pool.
+	*/
+
+	private BoundingSphere parallelFastSphere(final PointData data)
+	{
+		SolverMetrics metrics = new SolverMetrics(PARALLEL);
+		long t0 = System.nanoTime();
+		final int n = data.size();
+		int chunks = threads*4;
+		final int step = (n+chunks-1)/chunks;
+		ExecutorService pool = AsyncSolver.sharedPool();
+
+		try
+		{
+			Future<?>[] f = new Future<?>[chunks];
+			final double[][] box = new double[chunks][];
+			for (int c = 0; c < chunks; c++)
+			{
+				final int from = Math.min(n, c*step), to = Math.min(n, from+step), k = c;
+				f[c] = pool.submit(() ->
+				{
+					// The extremes on the axes are the box, as min x, max x, min y...
+
+					box[k] = new double[6];
+					data.extremes(Directions.AXES, from, to, new int[6], box[k]);
+				});
+			}
+			double[] all = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+			                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+			for (int c = 0; c < chunks; c++)
+			{
+				f[c].get();
+				for (int j = 0; j < 6; j += 2)
+				{
+					all[j] = Math.min(all[j], box[c][j]);
+					all[j+1] = Math.max(all[j+1], box[c][j+1]);
+				}
+			}
+			final Vec3 center = new Vec3((all[1]+all[0])*0.5, (all[3]+all[2])*0.5, (all[5]+all[4])*0.5);
+
+			final double[] reach2 = new double[chunks];
+			for (int c = 0; c < chunks; c++)
+			{
+				final int from = Math.min(n, c*step), to = Math.min(n, from+step), k = c;
+				f[c] = pool.submit(() ->
+				{
+					int far = data.mostDistant(center.x, center.y, center.z, from, to, Double.POSITIVE_INFINITY);
+					reach2[k] = (far < 0 ? 0.0 : center.distance2(data.point(far)));
+				});
+			}
+			double radius2 = 0.0;
+			for (int c = 0; c < chunks; c++)
+			{
+				f[c].get();
+				radius2 = Math.max(radius2, reach2[c]);
+			}
+			long t1 = System.nanoTime();
+
+			BoundingSphere bou = new BoundingSphere(center, Math.sqrt(radius2)+data.errorBound(), BoundingSphere.NON_MINIMAL);
+			bou.solverTime = (t1-t0)*1e-6;
+			bou.timeUnit = "millisecond";
+			bou.passes = 2;
+			bou.metatext = "Created by GeoFit.fastSphere() in parallel";
+
+			metrics.points = n;
+			metrics.passes = 2;
+			metrics.pointsScanned = 2L*n;
+			metrics.initNanos = metrics.totalNanos = t1-t0;
+			bou.metrics = metrics;
+			learner.record(metrics);
+			return bou;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+}
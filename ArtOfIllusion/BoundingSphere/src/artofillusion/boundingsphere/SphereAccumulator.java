@@ -0,0 +1,246 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+	<b>SphereAccumulator</b> collects points from several threads at the same time into one 
+	running bound. The producers never wait for each other: every thread adds its points to
+	a stripe of its own, that keeps a partial sphere grown in the way of Ritter's second pass.
+	The stripes are only combined, when the sphere is asked for.<p>
+
+	A stripe publishes its partial sphere as an immutable snapshot, each time it grows. Since
+	most points fall inside, this happens seldom and adding a point is usually just a distance
+	check. A reader always sees a sphere, that encloses all points added before the snapshots 
+	it read.<p>
+
+	The combined sphere encloses everything, but it is not minimal. If the points are kept, 
+	<code>exactSphere()</code> solves the minimal sphere of the points added so far.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereAccumulator
+{
+	private static final int CHUNK_BITS = 12, CHUNK = 1 << CHUNK_BITS;
+
+	private final boolean keepPoints;
+	private final ConcurrentLinkedQueue<Stripe> stripes = new ConcurrentLinkedQueue<Stripe>();
+	private final ThreadLocal<Stripe> local = ThreadLocal.withInitial(this::newStripe);
+
+	/** Create an accumulator, that only keeps the bound. */
+
+	public SphereAccumulator()
+	{
+		this(false);
+	}
+
+	/** 
+		Create an accumulator. If <code>keepPoints</code> is true, the points are stored, so 
+		that the exact sphere can be solved later.
+	*/
+
+	public SphereAccumulator(boolean keepPoints)
+	{
+		this.keepPoints = keepPoints;
+	}
+
+	/** Add a point. */
+
+	public void add(Vec3 point)
+	{
+		local.get().add(point.x, point.y, point.z);
+	}
+
+	/** Add a point. */
+
+	public void add(double x, double y, double z)
+	{
+		local.get().add(x, y, z);
+	}
+
+	/** The number of points added. Points, that are being added at the same time, may be missed. */
+
+	public long count()
+	{
+		long n = 0;
+		for (Stripe s : stripes)
+			n += s.added.get();
+		return n;
+	}
+
+	/** 
+		The combined bound of the stripes. It is <code>null</code>, if no points have been 
+		added. The fit is <code>NON_MINIMAL</code>.
+	*/
+
+	public BoundingSphere sphere()
+	{
+		long t0 = System.nanoTime();
+		BoundingSphere bou = null;
+		for (Stripe s : stripes)
+		{
+			Partial p = s.published;
+			if (p == null)
+				continue;
+			BoundingSphere part = new BoundingSphere(new Vec3(p.x, p.y, p.z), p.r, BoundingSphere.NON_MINIMAL);
+			bou = (bou == null ? part : bou.enclose(part));
+		}
+		if (bou != null)
+		{
+			bou.fit = BoundingSphere.NON_MINIMAL;
+			bou.solverTime = (System.nanoTime()-t0)*1e-6;
+			bou.timeUnit = "millisecond";
+			bou.metatext = "Created by SphereAccumulator.sphere()";
+		}
+		return bou;
+	}
+
+	/**
+		The minimal sphere of the points added so far, solved by <code>GeoFit</code>. This 
+		needs the points to be kept. It is <code>null</code>, if no points have been added.
+	*/
+
+	public BoundingSphere exactSphere()
+	{
+		if (! keepPoints)
+			throw new IllegalStateException("The points are not kept");
+
+		// Take the counts first. The points up to them have been written.
+
+		Stripe[] s = stripes.toArray(new Stripe[0]);
+		int[] n = new int[s.length];
+		double[][][] chunks = new double[s.length][][];
+		int total = 0;
+		for (int k = 0; k < s.length; k++)
+		{
+			n[k] = s[k].stored;
+			chunks[k] = s[k].chunks;
+			total += n[k];
+		}
+		if (total == 0)
+			return null;
+
+		Vec3[] vertex = new Vec3[total];
+		int v = 0;
+		for (int k = 0; k < s.length; k++)
+			for (int i = 0; i < n[k]; i++)
+			{
+				double[] c = chunks[k][i >> CHUNK_BITS];
+				int j = (i & CHUNK-1)*3;
+				vertex[v++] = new Vec3(c[j], c[j+1], c[j+2]);
+			}
+		BoundingSphere bou = new GeoFit().boundingSphere(vertex);
+		bou.metatext = "Created by SphereAccumulator.exactSphere()";
+		return bou;
+	}
+
+	private Stripe newStripe()
+	{
+		Stripe s = new Stripe();
+		stripes.add(s);
+		return s;
+	}
+
+	/** A partial sphere, as it was, when it was published. */
+
+	private static final class Partial
+	{
+		final double x, y, z, r;
+
+		Partial(double x, double y, double z, double r)
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.r = r;
+		}
+	}
+
+	/** The state of one producing thread. Only that thread writes to it. */
+
+	private final class Stripe
+	{
+		// The working copy of the owner.
+
+		private double cx, cy, cz, r, r2;
+		private boolean empty = true;
+
+		volatile Partial published;
+		final AtomicLong added = new AtomicLong();
+
+		// The kept points, in chunks of x, y, z. The count is written after the point.
+
+		volatile double[][] chunks = new double[16][];
+		volatile int stored;
+
+		void add(double x, double y, double z)
+		{
+			if (keepPoints)
+				store(x, y, z);
+
+			double dx = x-cx, dy = y-cy, dz = z-cz;
+			double d2 = dx*dx+dy*dy+dz*dz;
+			if (empty)
+			{
+				cx = x;
+				cy = y;
+				cz = z;
+				r = r2 = 0.0;
+				empty = false;
+				published = new Partial(x, y, z, 0.0);
+			}
+			else if (d2 > r2)
+			{
+				// Grow to reach the point, moving the center towards it, as in Ritter's pass 2.
+				// The rounding is taken outwards, so both the old sphere and the point stay inside.
+
+				double d = Math.sqrt(d2);
+				double rNew = (r+d)*0.5;
+				double f = (rNew-r)/d;
+				double nx = cx+dx*f, ny = cy+dy*f, nz = cz+dz*f;
+				double ex = x-nx, ey = y-ny, ez = z-nz;
+				double ox = cx-nx, oy = cy-ny, oz = cz-nz;
+				rNew = Math.max(rNew, Math.max(Math.sqrt(ex*ex+ey*ey+ez*ez), Math.sqrt(ox*ox+oy*oy+oz*oz)+r));
+				cx = nx;
+				cy = ny;
+				cz = nz;
+				r = Math.nextUp(rNew);
+				r2 = r*r*(1.0-1e-15); // rather grow once too often than let a point slip
+				published = new Partial(cx, cy, cz, r);
+			}
+			added.lazySet(added.get()+1);
+		}
+
+		private void store(double x, double y, double z)
+		{
+			int i = stored;
+			int c = i >> CHUNK_BITS;
+			double[][] ch = chunks;
+			if (c == ch.length)
+			{
+				double[][] grown = new double[c*2][];
+				System.arraycopy(ch, 0, grown, 0, c);
+				ch = grown;
+			}
+			if (ch[c] == null)
+				ch[c] = new double[CHUNK*3];
+			int j = (i & CHUNK-1)*3;
+			ch[c][j] = x;
+			ch[c][j+1] = y;
+			ch[c][j+2] = z;
+			chunks = ch;
+			stored = i+1;
+		}
+	}
+}
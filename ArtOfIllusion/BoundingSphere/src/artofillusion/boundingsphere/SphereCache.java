@@ -0,0 +1,259 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+	<b>SphereCache</b> keeps solved spheres in a file, so that the spheres of unchanged point
+	sets do not have to be solved again on the next run. The key is a 128-bit hash of the 
+	stored coordinates and the <code>errorBound()</code> of the data, so the same points give 
+	the same key, whatever <code>PointData</code> they are in.<p>
+
+	The file is memory mapped and has a fixed size, that is given when it is created. It is 
+	divided into sets of eight entries. A key can only be in one set and when the set is full,
+	the entry, that was used least recently, is replaced. An entry holds the center, the radius,
+	the fit, the error and up to four support indices.<p>
+
+	A hit costs one pass of hashing over the data, which is cheaper than any pass of a solver,
+	as it only reads the points once and does no distance calculations. The hit and miss counts
+	of this instance are available for monitoring.<p>
+
+	The methods are thread safe, but a file must only be opened by one cache at a time.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereCache
+{
+	private static final int MAGIC = 0x42534331, VERSION = 1;
+	private static final int HEADER = 64, ENTRY = 96, WAYS = 8;
+
+	// Entry layout
+
+	private static final int KEY1 = 0, KEY2 = 8, COUNT = 16, FIT = 20, USED = 24;
+	private static final int CENTER = 32, RADIUS = 56, ERROR = 64, SUPPORTS = 72, INDICES = 76;
+	private static final int MAX_SUPPORTS = 4;
+
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private int sets;
+	private long clock, hits, misses, evictions;
+
+	/** 
+		Open the cache file or create it, if it does not exist. If an existing file was made 
+		for a different size, it is cleared.
+
+		@param file     the cache file
+		@param maxBytes the size of the file, at most 2 GB
+	*/
+
+	public SphereCache(File file, long maxBytes) throws IOException
+	{
+		if (maxBytes < HEADER+WAYS*ENTRY || maxBytes > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Cache size " + maxBytes + " is out of range");
+
+		sets = (int)((maxBytes-HEADER)/(WAYS*ENTRY));
+		int bytes = HEADER+sets*WAYS*ENTRY;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		boolean valid = channel.size() == bytes;
+		map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+
+		if (valid && map.getInt(0) == MAGIC && map.getInt(4) == VERSION && map.getInt(8) == sets && map.getInt(12) == WAYS)
+		{
+			// The clock continues from the latest use. Reading it from the entries works,
+			// even if the file was not flushed.
+
+			for (int e = HEADER; e < bytes; e += ENTRY)
+				clock = Math.max(clock, map.getLong(e+USED));
+		}
+		else
+		{
+			for (int i = 0; i < bytes; i += 8)
+				map.putLong(i, 0L);
+			map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, sets).putInt(12, WAYS);
+		}
+	}
+
+	/** The cached sphere of the points, or <code>null</code>, if it is not in the cache. */
+
+	public BoundingSphere get(PointData data)
+	{
+		return lookup(key(data), data.size());
+	}
+
+	/** Store the sphere of the points. */
+
+	public void put(PointData data, BoundingSphere bou)
+	{
+		store(key(data), data.size(), bou);
+	}
+
+	/** The sphere of the points from the cache, or solved by <code>GeoFit</code> and stored. */
+
+	public BoundingSphere boundingSphere(PointData data)
+	{
+		long[] key = key(data);
+		BoundingSphere bou = lookup(key, data.size());
+		if (bou == null)
+		{
+			bou = new GeoFit().boundingSphere(data);
+			store(key, data.size(), bou);
+		}
+		return bou;
+	}
+
+	/** The sphere of the points from the cache, or solved by <code>GeoFit</code> and stored. */
+
+	public BoundingSphere boundingSphere(Vec3[] vertex)
+	{
+		return boundingSphere(new Vec3Points(vertex));
+	}
+
+	/** Lookups, that found the sphere. */
+
+	public synchronized long hits()
+	{
+		return hits;
+	}
+
+	/** Lookups, that did not find the sphere. */
+
+	public synchronized long misses()
+	{
+		return misses;
+	}
+
+	/** Entries, that were replaced to make room. */
+
+	public synchronized long evictions()
+	{
+		return evictions;
+	}
+
+	/** The share of the lookups, that were hits, or 0, if nothing has been looked up. */
+
+	public synchronized double hitRate()
+	{
+		return (hits+misses > 0 ? (double)hits/(hits+misses) : 0.0);
+	}
+
+	/** The number of spheres, that fit into the file. */
+
+	public int capacity()
+	{
+		return sets*WAYS;
+	}
+
+	/** Write the changes to the disk. */
+
+	public synchronized void flush()
+	{
+		map.force();
+	}
+
+	/** Flush and close the file. The cache can not be used after this. */
+
+	public synchronized void close() throws IOException
+	{
+		flush();
+		channel.close();
+	}
+
+	/** Hash the points as doubles, read by the storage in its own form. See <code>PointHash</code>. */
+
+	static long[] key(PointData data)
+	{
+		PointHash hash = new PointHash();
+		data.hash(hash);
+		return hash.key(data.size(), data.errorBound());
+	}
+
+	private int setOf(long[] key)
+	{
+		return HEADER+(int)Long.remainderUnsigned(key[0], sets)*WAYS*ENTRY;
+	}
+
+	private synchronized BoundingSphere lookup(long[] key, int count)
+	{
+		int set = setOf(key);
+		for (int w = 0, e = set; w < WAYS; w++, e += ENTRY)
+		{
+			if (map.getLong(e+USED) != 0 && map.getLong(e+KEY1) == key[0] && map.getLong(e+KEY2) == key[1] && map.getInt(e+COUNT) == count)
+			{
+				map.putLong(e+USED, ++clock);
+				hits++;
+				return read(e);
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	private synchronized void store(long[] key, int count, BoundingSphere bou)
+	{
+		int set = setOf(key);
+		int target = -1;
+		long oldest = Long.MAX_VALUE;
+
+		// The same key, an empty entry or the least recently used one, in this order.
+
+		for (int w = 0, e = set; w < WAYS; w++, e += ENTRY)
+		{
+			long used = map.getLong(e+USED);
+			if (used != 0 && map.getLong(e+KEY1) == key[0] && map.getLong(e+KEY2) == key[1])
+			{
+				target = e;
+				oldest = -1;
+				break;
+			}
+			if (used < oldest)
+			{
+				oldest = used;
+				target = e;
+			}
+		}
+		if (oldest > 0)
+			evictions++;
+
+		int supports = (bou.supportIndices == null || bou.supportIndices.size() > MAX_SUPPORTS ? -1 : bou.supportIndices.size());
+		map.putLong(target+KEY1, key[0]).putLong(target+KEY2, key[1]);
+		map.putInt(target+COUNT, count).putInt(target+FIT, bou.fit);
+		map.putDouble(target+CENTER, bou.center.x).putDouble(target+CENTER+8, bou.center.y).putDouble(target+CENTER+16, bou.center.z);
+		map.putDouble(target+RADIUS, bou.radius).putDouble(target+ERROR, bou.error);
+		map.putInt(target+SUPPORTS, supports);
+		for (int s = 0; s < supports; s++)
+			map.putInt(target+INDICES+4*s, bou.supportIndices.get(s));
+		map.putLong(target+USED, ++clock);
+	}
+
+	private BoundingSphere read(int e)
+	{
+		Vec3 center = new Vec3(map.getDouble(e+CENTER), map.getDouble(e+CENTER+8), map.getDouble(e+CENTER+16));
+		BoundingSphere bou = new BoundingSphere(center, map.getDouble(e+RADIUS), map.getInt(e+FIT));
+		bou.error = map.getDouble(e+ERROR);
+		int supports = map.getInt(e+SUPPORTS);
+		if (supports >= 0)
+		{
+			bou.supportIndices = new ArrayList<Integer>(supports);
+			for (int s = 0; s < supports; s++)
+				bou.supportIndices.add(map.getInt(e+INDICES+4*s));
+		}
+		bou.timeUnit = "millisecond";
+		bou.metatext = "Read from SphereCache";
+		return bou;
+	}
+}
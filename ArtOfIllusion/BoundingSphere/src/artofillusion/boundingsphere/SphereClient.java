@@ -0,0 +1,124 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+/**
+	<b>SphereClient</b> sends points to a <code>SphereServer</code> on the same machine and 
+	receives the spheres. A client has one connection and one request in flight at a time, 
+	so each thread should have a client of its own.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereClient
+{
+	private SocketChannel channel;
+	private ByteBuffer request, reply;
+	private int nextId;
+
+	/** Connect to the server at the given port. */
+
+	public SphereClient(int port) throws IOException
+	{
+		channel = SocketChannel.open(SphereProtocol.address(port));
+		channel.socket().setTcpNoDelay(true);
+		request = ByteBuffer.allocateDirect(1 << 16);
+		reply = ByteBuffer.allocateDirect(SphereProtocol.RESPONSE_HEADER+4*64);
+	}
+
+	/** Close the connection. */
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/** Solve the <code>GeoFit</code> sphere of the points. */
+
+	public BoundingSphere boundingSphere(Vec3[] vertex) throws IOException
+	{
+		prepare(SphereProtocol.GEOFIT, BufferPoints.DOUBLE, vertex.length);
+		for (Vec3 v : vertex)
+			request.putDouble(v.x).putDouble(v.y).putDouble(v.z);
+		return send();
+	}
+
+	/** Solve the <code>GeoFit</code> sphere of interleaved x, y, z floats. */
+
+	public BoundingSphere boundingSphere(float[] xyz) throws IOException
+	{
+		prepare(SphereProtocol.GEOFIT, BufferPoints.FLOAT, xyz.length/3);
+		for (int i = 0; i < xyz.length/3*3; i++)
+			request.putFloat(xyz[i]);
+		return send();
+	}
+
+	/** Solve the <code>GeoFit.fastSphere()</code> of the points. */
+
+	public BoundingSphere fastSphere(Vec3[] vertex) throws IOException
+	{
+		prepare(SphereProtocol.FAST, BufferPoints.DOUBLE, vertex.length);
+		for (Vec3 v : vertex)
+			request.putDouble(v.x).putDouble(v.y).putDouble(v.z);
+		return send();
+	}
+
+	private void prepare(int solver, int type, int count)
+	{
+		int bytes = SphereProtocol.REQUEST_HEADER+count*(type == BufferPoints.DOUBLE ? 24 : 12);
+		if (request.capacity() < bytes)
+			request = ByteBuffer.allocateDirect(Math.max(bytes, request.capacity()*2));
+		request.clear();
+		request.putInt(++nextId).putInt(solver).putInt(type).putInt(count);
+	}
+
+	private BoundingSphere send() throws IOException
+	{
+		request.flip();
+		SphereProtocol.writeFully(channel, request);
+
+		reply.clear().limit(SphereProtocol.RESPONSE_HEADER);
+		SphereProtocol.readFully(channel, reply);
+		int id = reply.getInt(0);
+		int fit = reply.getInt(4);
+		int supports = reply.getInt(SphereProtocol.RESPONSE_HEADER-4);
+		if (id != nextId)
+			throw new IOException("Response " + id + " to request " + nextId);
+		if (fit == SphereProtocol.ERROR)
+			throw new IOException("The server could not solve request " + id);
+
+		BoundingSphere bou = new BoundingSphere(new Vec3(reply.getDouble(8), reply.getDouble(16), reply.getDouble(24)), reply.getDouble(32), fit);
+		bou.error = reply.getDouble(40);
+		bou.passes = reply.getInt(48);
+		bou.solverTime = reply.getDouble(52);
+		bou.timeUnit = "millisecond";
+		bou.metatext = "Created by SphereServer";
+
+		if (reply.capacity() < SphereProtocol.RESPONSE_HEADER+4*supports)
+		{
+			ByteBuffer grown = ByteBuffer.allocateDirect(SphereProtocol.RESPONSE_HEADER+4*supports);
+			reply.flip();
+			grown.put(reply);
+			reply = grown;
+		}
+		reply.limit(SphereProtocol.RESPONSE_HEADER+4*supports);
+		SphereProtocol.readFully(channel, reply);
+		bou.supportIndices = new ArrayList<Integer>();
+		for (int s = 0; s < supports; s++)
+			bou.supportIndices.add(reply.getInt(SphereProtocol.RESPONSE_HEADER+4*s));
+		return bou;
+	}
+}
@@ -0,0 +1,25 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+/**
+	A <b>SphereListener</b> is informed of the intermediate results of a solver,
+	that tightens its sphere step by step. Every reported sphere encloses all of
+	the points and each one is smaller than the one before.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public interface SphereListener
+{
+	/** Called each time the solver has found a tighter enclosing sphere. */
+
+	public void sphereFound(BoundingSphere sphere);
+}
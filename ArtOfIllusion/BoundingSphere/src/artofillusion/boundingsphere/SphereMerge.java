@@ -0,0 +1,141 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.function.Function;
+
+/**
+	<b>SphereMerge</b> combines the <code>SphereSummary</code>s of the partitions of a cloud 
+	into the minimal sphere of the whole cloud.<p>
+
+	The smallest sphere of the candidates can not be larger than the one of all the points.
+	If no partition has points outside it, it is the exact result. Otherwise the points 
+	furthest outside are added to the candidates and the candidates are solved again. The
+	candidates only grow, so the rounds end and usually one or two are enough.<p>
+
+	The union of the local spheres is a bound, that is available from the first summaries,
+	without any verification.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereMerge
+{
+	private ArrayList<Vec3> candidates;
+	private HashSet<Long> known;   // partition and index of each candidate
+	private BoundingSphere union;
+	private int rounds;
+
+	/** Create an empty merge. */
+
+	public SphereMerge()
+	{
+		candidates = new ArrayList<Vec3>();
+		known = new HashSet<Long>();
+	}
+
+	/** 
+		Add the candidates of a summary. Returns the number of new candidates, points that 
+		were already known are skipped.
+	*/
+
+	public int add(SphereSummary summary)
+	{
+		if (summary.sphere != null)
+			union = (union == null ? summary.sphere : union.enclose(summary.sphere));
+
+		int added = 0;
+		for (int i = 0; i < summary.points.length; i++)
+			if (known.add((long)summary.partition << 32 | summary.indices[i] & 0xffffffffL))
+			{
+				candidates.add(summary.points[i]);
+				added++;
+			}
+		return added;
+	}
+
+	/** 
+		The smallest sphere of the candidates so far. It may not enclose all of the points, 
+		before it has been verified against each partition.
+	*/
+
+	public BoundingSphere candidate()
+	{
+		if (candidates.isEmpty())
+			return null;
+		BoundingSphere bou = new GeoFit().boundingSphere(candidates.toArray(new Vec3[candidates.size()]));
+		bou.supportIndices = null; // they are indices to the candidates
+		return bou;
+	}
+
+	/** The sphere, that encloses the local spheres of all summaries added so far. */
+
+	public BoundingSphere bound()
+	{
+		if (union == null)
+			return null;
+		BoundingSphere bou = new BoundingSphere(new Vec3(union.center), union.radius, BoundingSphere.NON_MINIMAL);
+		bou.metatext = "Created by SphereMerge.bound()";
+		return bou;
+	}
+
+	/** The number of verification rounds of the last <code>solve()</code>. */
+
+	public int rounds()
+	{
+		return rounds;
+	}
+
+	/**
+		Solve the exact sphere, after the first summaries of all partitions have been added.
+		The verifier sends the candidate sphere to every partition and returns the summaries,
+		that the partitions made with <code>SphereSummary.outside()</code>. It may throw an 
+		unchecked exception, if a partition can not be reached.
+	*/
+
+	public BoundingSphere solve(Function<BoundingSphere, Collection<SphereSummary>> verifier)
+	{
+		long t0 = System.nanoTime();
+		rounds = 0;
+		BoundingSphere bou = candidate();
+		if (bou == null)
+			return null;
+
+		while (true)
+		{
+			rounds++;
+			double reach = 0.0;
+			int added = 0;
+			for (SphereSummary s : verifier.apply(bou))
+			{
+				reach = Math.max(reach, s.reach);
+				added += add(s);
+			}
+			if (added == 0)
+			{
+				// Only points on the surface, within the rounding, may be outside. 
+				// Reach them too, so that the sphere surely encloses all.
+
+				bou.radius = Math.max(bou.radius, reach);
+				break;
+			}
+			bou = candidate();
+		}
+		bou.solverTime = (System.nanoTime()-t0)*1e-6;
+		bou.timeUnit = "millisecond";
+		bou.passes = rounds;
+		bou.metatext = "Created by SphereMerge.solve()";
+		return bou;
+	}
+}
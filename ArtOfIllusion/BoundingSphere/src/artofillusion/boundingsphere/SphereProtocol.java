@@ -0,0 +1,73 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+	<b>SphereProtocol</b> is the binary framing of <code>SphereServer</code> and 
+	<code>SphereClient</code>. All numbers are big-endian.<p>
+
+	A request is a header of four ints, the request id, the solver, the coordinate type and
+	the number of points, followed by the points as three floats or three doubles each.<p>
+
+	A response is the request id, the fit (or <code>ERROR</code>), the center, the radius and
+	the error as doubles, the number of passes, the solver time in milliseconds as double, the
+	number of supports and the support indices.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+final class SphereProtocol
+{
+	/** Solvers */
+	static final int GEOFIT = 0, FAST = 1;
+
+	/** The fit of a failed request */
+	static final int ERROR = -2;
+
+	static final int REQUEST_HEADER = 16, RESPONSE_HEADER = 4+4+5*8+4+8+4;
+
+	/** The largest accepted number of points in one request */
+	static final int MAX_POINTS = 1 << 26;
+
+	private SphereProtocol()
+	{}
+
+	/** The address, that the server listens to. Only this machine can connect. */
+
+	static InetSocketAddress address(int port)
+	{
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/** Fill the buffer from the channel up to its limit. */
+
+	static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new EOFException();
+	}
+
+	/** Write the buffer to the channel from its position up to its limit. */
+
+	static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
@@ -0,0 +1,390 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+	<b>SphereServer</b> lets several tools share one solver process. It listens to a port on 
+	the loopback interface, reads point buffers in the framing of <code>SphereProtocol</code> 
+	and answers with the spheres. <code>SphereClient</code> is the other end.<p>
+
+	Each connection reads its request into a direct buffer of its own, that is reused and
+	only grown when needed. The solver reads the points straight from that buffer through
+	<code>BufferPoints</code>, so nothing is copied to the heap.<p>
+
+	Small requests, that arrive at about the same time from different connections, are 
+	collected into a batch, that is solved as one task on the pool, so that a burst of tiny
+	requests does not pay for a task each. Large requests are solved as tasks of their own.<p>
+
+	The server is embeddable: create it, <code>start()</code> it and <code>stop()</code> it, 
+	when done. By default it uses the same shared pool as <code>AsyncSolver</code>.<p>
+
+	A request of more points, than the server accepts, or a broken header closes the 
+	connection, as the rest of the stream can no longer be trusted. A failed solve is 
+	answered with <code>ERROR</code>. The errors are passed to an <code>ErrorListener</code>, 
+	if one is set.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereServer
+{
+	private int port;
+	private Executor executor;
+	private ServerSocketChannel server;
+	private Thread acceptor, batcher;
+	private volatile boolean running;
+	private ConcurrentHashMap<SocketChannel, Thread> connections = new ConcurrentHashMap<SocketChannel, Thread>();
+	private BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+	private MetricsRecorder recorder;
+	private ErrorListener errorListener;
+	private int maxPoints;
+
+	/** The largest request accepted by default, 96 MB of doubles or 48 MB of floats. */
+	public static final int DEFAULT_MAX_POINTS = 1 << 22;
+
+	private int batchPoints = 4096;   // requests up to this size are batched
+	private int batchSize = 64;       // requests in one batch at most
+	private long lingerNanos = 200000; // how long a batch waits for more requests
+
+	/** Create a server for the given port, 0 for any free port. */
+
+	public SphereServer(int port)
+	{
+		this(port, AsyncSolver.sharedPool());
+	}
+
+	/** Create a server, that solves on the given executor. */
+
+	public SphereServer(int port, Executor executor)
+	{
+		this(port, executor, DEFAULT_MAX_POINTS);
+	}
+
+	/** 
+		Create a server, that solves on the given executor and accepts requests of up to 
+		<code>maxPoints</code> points. A connection may keep a buffer of that size.
+	*/
+
+	public SphereServer(int port, Executor executor, int maxPoints)
+	{
+		if (maxPoints < 1 || maxPoints > SphereProtocol.MAX_POINTS)
+			throw new IllegalArgumentException("The largest request must be 1 to " + SphereProtocol.MAX_POINTS + " points");
+		this.port = port;
+		this.executor = executor;
+		this.maxPoints = maxPoints;
+	}
+
+	/** Set a recorder, that receives the metrics of every solve. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/** Set a listener, that receives the errors of the connections and the solves. Use <code>null</code> for none. */
+
+	public ErrorListener errorListener(ErrorListener errorListener)
+	{
+		this.errorListener = errorListener;
+		return errorListener;
+	}
+
+	/** Check the current error listener. */
+
+	public ErrorListener errorListener()
+	{
+		return errorListener;
+	}
+
+	/** The largest number of points accepted in one request. */
+
+	public int maxPoints()
+	{
+		return maxPoints;
+	}
+
+	/** 
+		Set how requests are batched: requests of up to <code>points</code> points are batched, 
+		up to <code>size</code> of them together, waiting at most <code>lingerMicros</code> for 
+		more to arrive.
+	*/
+
+	public void batching(int points, int size, int lingerMicros)
+	{
+		batchPoints = points;
+		batchSize = Math.max(1, size);
+		lingerNanos = lingerMicros*1000L;
+	}
+
+	/** Start listening. Returns the port, that was bound. */
+
+	public synchronized int start() throws IOException
+	{
+		server = ServerSocketChannel.open();
+		server.bind(SphereProtocol.address(port));
+		port = ((InetSocketAddress)server.getLocalAddress()).getPort();
+		running = true;
+
+		acceptor = new Thread(this::accept, "SphereServer-accept-" + port);
+		acceptor.setDaemon(true);
+		acceptor.start();
+		batcher = new Thread(this::batch, "SphereServer-batch-" + port);
+		batcher.setDaemon(true);
+		batcher.start();
+		return port;
+	}
+
+	/** Stop the server and close all connections. */
+
+	public synchronized void stop()
+	{
+		running = false;
+		try
+		{
+			if (server != null)
+				server.close();
+		}
+		catch (IOException e)
+		{}
+		for (SocketChannel c : connections.keySet())
+			close(c);
+		if (batcher != null)
+			batcher.interrupt();
+	}
+
+	/** The port, that the server listens to. */
+
+	public int port()
+	{
+		return port;
+	}
+
+	private void accept()
+	{
+		while (running)
+		{
+			try
+			{
+				final SocketChannel channel = server.accept();
+				channel.socket().setTcpNoDelay(true);
+				Thread t = new Thread(() -> serve(channel), "SphereServer-connection");
+				t.setDaemon(true);
+				connections.put(channel, t);
+				t.start();
+			}
+			catch (IOException e)
+			{
+				if (running)
+					report(e);
+			}
+		}
+	}
+
+	/** Read requests from one connection and answer them in order. */
+
+	private void serve(SocketChannel channel)
+	{
+		ByteBuffer header = ByteBuffer.allocateDirect(SphereProtocol.REQUEST_HEADER);
+		ByteBuffer data = ByteBuffer.allocateDirect(1 << 16);
+		ByteBuffer reply = ByteBuffer.allocateDirect(SphereProtocol.RESPONSE_HEADER+4*64);
+		try
+		{
+			while (running)
+			{
+				header.clear();
+				SphereProtocol.readFully(channel, header);
+				int id = header.getInt(0);
+				int solver = header.getInt(4);
+				int type = header.getInt(8);
+				int count = header.getInt(12);
+				if (type != BufferPoints.FLOAT && type != BufferPoints.DOUBLE)
+					throw new IOException("Bad coordinate type " + type + " in request " + id);
+				if (count < 1 || count > maxPoints)
+					throw new IOException("Request " + id + " of " + count + " points, the server accepts 1 to " + maxPoints);
+
+				int bytes = count*(type == BufferPoints.DOUBLE ? 24 : 12);
+				if (data.capacity() < bytes)
+					data = ByteBuffer.allocateDirect(Math.max(bytes, Math.min(data.capacity()*2, maxPoints*24)));
+				data.clear().limit(bytes);
+				SphereProtocol.readFully(channel, data);
+
+				Request request = new Request(id, solver, new BufferPoints(data, 0, bytes/count, count, type));
+				if (count <= batchPoints)
+					queue.put(request);
+				else
+					executor.execute(() -> solve(new GeoFit(), request));
+
+				BoundingSphere bou = null;
+				try
+				{
+					bou = request.result.get();
+				}
+				catch (ExecutionException e)
+				{
+					report(e.getCause());
+				}
+				reply = response(reply, id, bou);
+				SphereProtocol.writeFully(channel, reply);
+			}
+		}
+		catch (EOFException | ClosedChannelException e)
+		{}
+		catch (IOException | InterruptedException e)
+		{
+			if (running)
+				report(e);
+		}
+		finally
+		{
+			close(channel);
+		}
+	}
+
+	/** Collect the small requests into batches. */
+
+	private void batch()
+	{
+		while (running)
+		{
+			try
+			{
+				final ArrayList<Request> batch = new ArrayList<Request>();
+				batch.add(queue.take());
+				long deadline = System.nanoTime()+lingerNanos;
+				while (batch.size() < batchSize)
+				{
+					queue.drainTo(batch, batchSize-batch.size());
+					long wait = deadline-System.nanoTime();
+					if (batch.size() >= batchSize || wait <= 0)
+						break;
+					Request r = queue.poll(wait, TimeUnit.NANOSECONDS);
+					if (r == null)
+						break;
+					batch.add(r);
+				}
+				executor.execute(() ->
+				{
+					GeoFit geofit = new GeoFit();
+					for (Request r : batch)
+						solve(geofit, r);
+				});
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+	}
+
+	private void solve(GeoFit geofit, Request request)
+	{
+		try
+		{
+			geofit.recorder(recorder);
+			if (request.solver == SphereProtocol.FAST)
+				request.result.complete(geofit.fastSphere(request.data));
+			else
+				request.result.complete(geofit.boundingSphere(request.data));
+		}
+		catch (Throwable e)
+		{
+			request.result.completeExceptionally(e);
+		}
+	}
+
+	private void report(Throwable error)
+	{
+		ErrorListener l = errorListener;
+		if (l != null)
+			l.errorOccurred(error);
+	}
+
+	/** Write the answer into the buffer, growing it if needed, and flip it for writing. */
+
+	private static ByteBuffer response(ByteBuffer reply, int id, BoundingSphere bou)
+	{
+		int supports = (bou == null || bou.supportIndices == null ? 0 : bou.supportIndices.size());
+		int bytes = SphereProtocol.RESPONSE_HEADER+4*supports;
+		if (reply.capacity() < bytes)
+			reply = ByteBuffer.allocateDirect(bytes);
+		reply.clear();
+		reply.putInt(id);
+		if (bou == null)
+		{
+			reply.putInt(SphereProtocol.ERROR);
+			for (int i = 0; i < 5; i++)
+				reply.putDouble(Double.NaN);
+			reply.putInt(0).putDouble(0.0).putInt(0);
+		}
+		else
+		{
+			reply.putInt(bou.fit);
+			reply.putDouble(bou.center.x).putDouble(bou.center.y).putDouble(bou.center.z);
+			reply.putDouble(bou.radius).putDouble(bou.error);
+			reply.putInt(bou.passes).putDouble(bou.solverTime).putInt(supports);
+			for (int i = 0; i < supports; i++)
+				reply.putInt(bou.supportIndices.get(i));
+		}
+		reply.flip();
+		return reply;
+	}
+
+	private void close(SocketChannel channel)
+	{
+		connections.remove(channel);
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{}
+	}
+
+	/** A request waiting for its solve. The points stay in the buffer of the connection until it is answered. */
+
+	private static final class Request
+	{
+		final int id, solver;
+		final PointData data;
+		final CompletableFuture<BoundingSphere> result = new CompletableFuture<BoundingSphere>();
+
+		Request(int id, int solver, PointData data)
+		{
+			this.id = id;
+			this.solver = solver;
+			this.data = data;
+		}
+	}
+}
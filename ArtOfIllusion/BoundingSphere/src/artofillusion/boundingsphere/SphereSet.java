@@ -0,0 +1,450 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.Arrays;
+
+/**
+	<b>SphereSet</b> keeps a large number of spheres, for example the bounds of the objects 
+	in a scene, in packed arrays of coordinates and radii, and tests rays and view frustums 
+	against all of them at once.<p>
+
+	The arrays are read in order, one coordinate at a time, and the tests are written without
+	objects or method calls in the loops, so that they run at the speed of the memory. Sets of
+	more than a few thousand spheres are tested in chunks on the shared pool of 
+	<code>AsyncSolver</code>. For sub-linear queries build a <code>SphereTree</code> on the set.
+	The whole set can be moved by one matrix or by a matrix per sphere, with the radii grown
+	by the scaling. A tree on a moved set is updated by <code>SphereTree.refit()</code>.<p>
+
+	A ray is given as an origin and a direction. The distances along the ray are in units 
+	of the length of the direction, so with a unit direction they are true distances. A ray, 
+	that starts inside a sphere, hits it at the distance 0.<p>
+
+	A frustum is given as planes with normals pointing inward: a point <code>p</code> is inside,
+	when <code>normal[k].dot(p) >= offset[k]</code> for every plane <code>k</code>. The normals do
+	not have to be unit length.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereSet
+{
+	/** Frustum classification */
+	public static final byte OUTSIDE = 0, INTERSECTING = 1, INSIDE = 2;
+
+	static final int GRAIN = 4096; // spheres per parallel chunk at least
+
+	double[] x, y, z, r;
+	int count;
+
+	/** Create an empty set. */
+
+	public SphereSet()
+	{
+		this(16);
+	}
+
+	/** Create an empty set with room for the given number of spheres. */
+
+	public SphereSet(int capacity)
+	{
+		capacity = Math.max(1, capacity);
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+		r = new double[capacity];
+	}
+
+	/** Create a set of the spheres in the given order. */
+
+	public SphereSet(BoundingSphere[] spheres)
+	{
+		this(spheres.length);
+		for (BoundingSphere s : spheres)
+			add(s);
+	}
+
+	/** The number of spheres. */
+
+	public int size()
+	{
+		return count;
+	}
+
+	/** Add a sphere and return its index. */
+
+	public int add(BoundingSphere sphere)
+	{
+		return add(sphere.center.x, sphere.center.y, sphere.center.z, sphere.radius);
+	}
+
+	/** Add a sphere and return its index. */
+
+	public int add(double cx, double cy, double cz, double radius)
+	{
+		if (count == x.length)
+		{
+			int capacity = x.length*2;
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			z = Arrays.copyOf(z, capacity);
+			r = Arrays.copyOf(r, capacity);
+		}
+		set(count, cx, cy, cz, radius);
+		return count++;
+	}
+
+	/** Replace the sphere at index <code>i</code>. */
+
+	public void set(int i, double cx, double cy, double cz, double radius)
+	{
+		x[i] = cx;
+		y[i] = cy;
+		z[i] = cz;
+		r[i] = radius;
+	}
+
+	/** A copy of the sphere at index <code>i</code>. */
+
+	public BoundingSphere sphere(int i)
+	{
+		return new BoundingSphere(new Vec3(x[i], y[i], z[i]), r[i]);
+	}
+
+	/**
+		Transform all the spheres by one matrix, for example from the local coordinates of
+		an object to the scene. The radii are multiplied by the largest scale factor of the
+		matrix, so the spheres still enclose what they enclosed, also under non-uniform
+		scaling and shear. The matrix must be affine, as the ones of
+		<code>CoordinateSystem</code> are.
+
+		@param target the set to write the result to. It may be this set or <code>null</code> for a new set.
+		@return the target
+	*/
+
+	public SphereSet transform(Mat4 m, SphereSet target)
+	{
+		final SphereSet t = sized(target);
+		final double m11 = m.m11, m12 = m.m12, m13 = m.m13, m14 = m.m14;
+		final double m21 = m.m21, m22 = m.m22, m23 = m.m23, m24 = m.m24;
+		final double m31 = m.m31, m32 = m.m32, m33 = m.m33, m34 = m.m34;
+		final double scale = SweptSphere.maxScale(m);
+		Chunks.run(count, GRAIN, (chunk, from, to) ->
+		{
+			double[] tx = t.x, ty = t.y, tz = t.z, tr = t.r;
+			for (int i = from; i < to; i++)
+			{
+				double cx = x[i], cy = y[i], cz = z[i];
+				tx[i] = m11*cx+m12*cy+m13*cz+m14;
+				ty[i] = m21*cx+m22*cy+m23*cz+m24;
+				tz[i] = m31*cx+m32*cy+m33*cz+m34;
+				tr[i] = r[i]*scale;
+			}
+		});
+		return t;
+	}
+
+	/**
+		Transform each sphere by its own matrix, the sphere at index <code>i</code> by
+		<code>m[i]</code>, for example to move the local bounds of all the objects of an
+		animated scene to the scene every frame. Spheres next to each other, that share the
+		same matrix instance, share the work of finding its scale. The radii are scaled by
+		<code>scaleBound()</code>, which is exact for rotations and scaling and larger for
+		shear.
+
+		@param target the set to write the result to. It may be this set or <code>null</code> for a new set.
+		@return the target
+	*/
+
+	public SphereSet transform(final Mat4[] m, SphereSet target)
+	{
+		if (m.length < count)
+			throw new IllegalArgumentException(m.length + " matrices for " + count + " spheres");
+		final SphereSet t = sized(target);
+		Chunks.run(count, GRAIN/4, (chunk, from, to) ->
+		{
+			Mat4 last = null;
+			double scale = 0.0;
+			for (int i = from; i < to; i++)
+			{
+				Mat4 a = m[i];
+				if (a != last)
+				{
+					scale = scaleBound(a);
+					last = a;
+				}
+				double cx = x[i], cy = y[i], cz = z[i];
+				t.x[i] = a.m11*cx+a.m12*cy+a.m13*cz+a.m14;
+				t.y[i] = a.m21*cx+a.m22*cy+a.m23*cz+a.m24;
+				t.z[i] = a.m31*cx+a.m32*cy+a.m33*cz+a.m34;
+				t.r[i] = r[i]*scale;
+			}
+		});
+		return t;
+	}
+
+	/**
+		A bound of the largest scale factor of the matrix, that is cheaper than the one of
+		<code>SweptSphere</code>. The largest eigenvalue of L<sup>T</sup>L is at most the 
+		largest absolute row sum of it. For a rotation with scaling the off-diagonal terms 
+		are zero and the bound is exact. Shear makes it larger than necessary.
+	*/
+
+	static double scaleBound(Mat4 m)
+	{
+		double a11 = m.m11*m.m11+m.m21*m.m21+m.m31*m.m31;
+		double a22 = m.m12*m.m12+m.m22*m.m22+m.m32*m.m32;
+		double a33 = m.m13*m.m13+m.m23*m.m23+m.m33*m.m33;
+		double a12 = Math.abs(m.m11*m.m12+m.m21*m.m22+m.m31*m.m32);
+		double a13 = Math.abs(m.m11*m.m13+m.m21*m.m23+m.m31*m.m33);
+		double a23 = Math.abs(m.m12*m.m13+m.m22*m.m23+m.m32*m.m33);
+		double max = Math.max(a11+a12+a13, Math.max(a12+a22+a23, a13+a23+a33));
+		return Math.sqrt(max)*(1.0+1e-12);
+	}
+
+	/** The target set with room for the spheres of this set and the same count. */
+
+	private SphereSet sized(SphereSet target)
+	{
+		if (target == null)
+			target = new SphereSet(count);
+		if (target.x.length < count)
+		{
+			target.x = Arrays.copyOf(target.x, count);
+			target.y = Arrays.copyOf(target.y, count);
+			target.z = Arrays.copyOf(target.z, count);
+			target.r = Arrays.copyOf(target.r, count);
+		}
+		target.count = count;
+		return target;
+	}
+
+	/** 
+		The distance along the ray to the sphere at index <code>i</code>, or 
+		<code>Double.POSITIVE_INFINITY</code>, if the ray misses it.
+	*/
+
+	public double intersect(int i, Vec3 origin, Vec3 direction)
+	{
+		double a = direction.dot(direction);
+		return entry(x[i]-origin.x, y[i]-origin.y, z[i]-origin.z, r[i], direction.x, direction.y, direction.z, a);
+	}
+
+	/**
+		Find the sphere, that the ray hits first. Of the spheres at equal distance the one 
+		with the lowest index is taken.
+
+		@param distance if not <code>null</code>, the distance to the hit is stored in its first element
+		@return the index of the sphere or -1, if the ray hits none
+	*/
+
+	public int nearest(final Vec3 origin, final Vec3 direction, double[] distance)
+	{
+		final int chunks = Chunks.count(count, GRAIN);
+		final double[] bestT = new double[chunks];
+		final int[] best = new int[chunks];
+		Chunks.run(count, GRAIN, (chunk, from, to) ->
+		{
+			double dx = direction.x, dy = direction.y, dz = direction.z;
+			double a = dx*dx+dy*dy+dz*dz;
+			double ox = origin.x, oy = origin.y, oz = origin.z;
+			double tMin = Double.POSITIVE_INFINITY;
+			int iMin = -1;
+			for (int i = from; i < to; i++)
+			{
+				double t = entry(x[i]-ox, y[i]-oy, z[i]-oz, r[i], dx, dy, dz, a);
+				if (t < tMin)
+				{
+					tMin = t;
+					iMin = i;
+				}
+			}
+			bestT[chunk] = tMin;
+			best[chunk] = iMin;
+		});
+
+		int hit = -1;
+		double t = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < chunks; c++)
+			if (bestT[c] < t)
+			{
+				t = bestT[c];
+				hit = best[c];
+			}
+		if (distance != null)
+			distance[0] = t;
+		return hit;
+	}
+
+	/** The indices of all the spheres, that the ray hits, from the nearest to the farthest. */
+
+	public int[] hits(final Vec3 origin, final Vec3 direction)
+	{
+		final int chunks = Chunks.count(count, GRAIN);
+		final long[][] found = new long[chunks][];
+		final int[] foundCount = new int[chunks];
+		Chunks.run(count, GRAIN, (chunk, from, to) ->
+		{
+			double dx = direction.x, dy = direction.y, dz = direction.z;
+			double a = dx*dx+dy*dy+dz*dz;
+			double ox = origin.x, oy = origin.y, oz = origin.z;
+			long[] f = new long[16];
+			int n = 0;
+			for (int i = from; i < to; i++)
+			{
+				double t = entry(x[i]-ox, y[i]-oy, z[i]-oz, r[i], dx, dy, dz, a);
+				if (t < Double.POSITIVE_INFINITY)
+				{
+					if (n == f.length)
+						f = Arrays.copyOf(f, n*2);
+					f[n++] = sortKey(t, i);
+				}
+			}
+			found[chunk] = f;
+			foundCount[chunk] = n;
+		});
+		return sorted(found, foundCount, origin, direction);
+	}
+
+	/**
+		Classify each sphere against the frustum as <code>INSIDE</code>, <code>INTERSECTING</code>
+		or <code>OUTSIDE</code>.
+
+		@param result  receives the classes, at least <code>size()</code> long
+		@return the number of spheres, that are not outside
+	*/
+
+	public int classify(Vec3[] normal, double[] offset, final byte[] result)
+	{
+		final double[] plane = planes(normal, offset);
+		final int chunks = Chunks.count(count, GRAIN);
+		final int[] visible = new int[chunks];
+		Chunks.run(count, GRAIN, (chunk, from, to) ->
+		{
+			int v = 0;
+			for (int i = from; i < to; i++)
+			{
+				byte c = classify(plane, x[i], y[i], z[i], r[i]);
+				result[i] = c;
+				if (c != OUTSIDE)
+					v++;
+			}
+			visible[chunk] = v;
+		});
+		int v = 0;
+		for (int c : visible)
+			v += c;
+		return v;
+	}
+
+	/**
+		The distance along the ray to a sphere at (cx, cy, cz) relative to the origin, or 
+		infinity if it misses. <code>a</code> is the squared length of the direction.
+	*/
+
+	static double entry(double cx, double cy, double cz, double radius, double dx, double dy, double dz, double a)
+	{
+		double b = cx*dx+cy*dy+cz*dz;        // projection of the center on the ray, times a
+		double c = cx*cx+cy*cy+cz*cz-radius*radius;
+		if (c <= 0.0)
+			return 0.0;                      // the origin is inside
+		if (b <= 0.0)
+			return Double.POSITIVE_INFINITY; // the sphere is behind
+		double disc = b*b-a*c;
+		if (disc < 0.0)
+			return Double.POSITIVE_INFINITY;
+		return (b-Math.sqrt(disc))/a;
+	}
+
+	/** The planes as unit normals and offsets, four doubles each. */
+
+	static double[] planes(Vec3[] normal, double[] offset)
+	{
+		double[] plane = new double[normal.length*4];
+		for (int k = 0; k < normal.length; k++)
+		{
+			double f = 1.0/normal[k].length();
+			plane[k*4]   = normal[k].x*f;
+			plane[k*4+1] = normal[k].y*f;
+			plane[k*4+2] = normal[k].z*f;
+			plane[k*4+3] = offset[k]*f;
+		}
+		return plane;
+	}
+
+	/** Classify one sphere against unit planes. */
+
+	static byte classify(double[] plane, double cx, double cy, double cz, double radius)
+	{
+		byte c = INSIDE;
+		for (int k = 0; k < plane.length; k += 4)
+		{
+			double s = plane[k]*cx+plane[k+1]*cy+plane[k+2]*cz-plane[k+3];
+			if (s < -radius)
+				return OUTSIDE;
+			if (s < radius)
+				c = INTERSECTING;
+		}
+		return c;
+	}
+
+	/** 
+		Pack a distance and an index into a long, that sorts by the distance. The bits of a 
+		non-negative float sort as the float does, so the distance is rounded up to a float, 
+		which leaves 32 bits for the index.
+	*/
+
+	static long sortKey(double t, int i)
+	{
+		float f = (float)t;
+		if (f < t)
+			f = Math.nextUp(f);
+		return (long)Float.floatToIntBits(f) << 32 | i;
+	}
+
+	/** 
+		Merge the keys of the chunks into indices sorted by the distance. Hits closer to each 
+		other than the float resolution may be in the wrong order after sorting the keys, so
+		they are put in order by the exact distances, with a pass, that only moves those.
+	*/
+
+	int[] sorted(long[][] found, int[] foundCount, Vec3 origin, Vec3 direction)
+	{
+		int total = 0;
+		for (int n : foundCount)
+			total += n;
+		long[] all = new long[total];
+		int k = 0;
+		for (int c = 0; c < found.length; c++)
+		{
+			System.arraycopy(found[c], 0, all, k, foundCount[c]);
+			k += foundCount[c];
+		}
+		Arrays.sort(all);
+		int[] index = new int[total];
+		double[] t = new double[total];
+		for (int h = 0; h < total; h++)
+		{
+			int i = (int)all[h];
+			double ti = intersect(i, origin, direction);
+			int j = h;
+			while (j > 0 && (t[j-1] > ti || (t[j-1] == ti && index[j-1] > i)))
+			{
+				t[j] = t[j-1];
+				index[j] = index[j-1];
+				j--;
+			}
+			t[j] = ti;
+			index[j] = i;
+		}
+		return index;
+	}
+}
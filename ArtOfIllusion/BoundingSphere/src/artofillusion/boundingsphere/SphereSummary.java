@@ -0,0 +1,190 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+	A <b>SphereSummary</b> describes one partition of a point cloud with a handful of points, 
+	so that the sphere of the whole cloud can be solved without moving the partitions. It is
+	the message between the workers, that hold the partitions, and <code>SphereMerge</code>, 
+	that combines them.<p>
+
+	The first summary of a partition has the local sphere and, as candidates, the points 
+	furthest from its center. The summaries of the verification rounds have the points, that 
+	are outside the candidate sphere sent by the merge, and how far the partition reaches from
+	its center.<p>
+
+	The binary form has a fixed header of 57 bytes and 28 bytes for each point, so a summary
+	of 64 candidates is under 2 kilobytes.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereSummary
+{
+	private static final int MAGIC = 0x42535331; // "BSS1"
+
+	/** The largest accepted number of points in one summary, 28 megabytes in the binary form */
+	static final int MAX_POINTS = 1 << 20;
+
+	/** The number of the partition, given by the caller. */
+	public int partition;
+
+	/** The local sphere of the partition. Only in the first summary, otherwise <code>null</code>. */
+	public BoundingSphere sphere;
+
+	/** The largest distance of the partition from the center, it was checked against. */
+	public double reach;
+
+	/** The candidate points. */
+	public Vec3[] points;
+
+	/** The indices of the candidate points in the partition. */
+	public int[] indices;
+
+	/** Create an empty summary. */
+
+	public SphereSummary()
+	{
+		points = new Vec3[0];
+		indices = new int[0];
+	}
+
+	/**
+		Summarize a partition: solve its sphere and pick the supports and the points furthest 
+		from the center as the candidates.
+
+		@param partition   the number of the partition
+		@param data        the points of the partition
+		@param candidates  how many of the furthest points to include
+	*/
+
+	public static SphereSummary summarize(int partition, PointData data, int candidates)
+	{
+		SphereSummary sum = new SphereSummary();
+		sum.partition = partition;
+		if (data.size() == 0)
+			return sum;
+
+		sum.sphere = new GeoFit().boundingSphere(data);
+		sum.reach = sum.sphere.radius;
+		int[] far = data.farthest(sum.sphere.center.x, sum.sphere.center.y, sum.sphere.center.z, candidates, -1.0);
+		int n = far.length;
+		int[] idx = new int[n+sum.sphere.supportIndices.size()];
+		System.arraycopy(far, 0, idx, 0, n);
+		for (int s : sum.sphere.supportIndices)
+		{
+			boolean found = false;
+			for (int i = 0; i < n && ! found; i++)
+				found = (idx[i] == s);
+			if (! found)
+				idx[n++] = s;
+		}
+		sum.setPoints(data, idx, n);
+		return sum;
+	}
+
+	/**
+		Check a partition against a candidate sphere. The result has up to <code>max</code> 
+		of the points furthest outside and the reach of the partition from the center.
+	*/
+
+	public static SphereSummary outside(int partition, PointData data, BoundingSphere candidate, int max)
+	{
+		SphereSummary sum = new SphereSummary();
+		sum.partition = partition;
+		if (data.size() == 0)
+			return sum;
+
+		int far = data.mostDistant(candidate.center.x, candidate.center.y, candidate.center.z, -1.0);
+		sum.reach = candidate.center.distance(data.point(far))+data.errorBound();
+
+		// Points on the surface, within the rounding errors, are not reported.
+
+		double r2 = candidate.radius*candidate.radius*(1.0+1e-13);
+		int[] idx = data.farthest(candidate.center.x, candidate.center.y, candidate.center.z, max, r2);
+		sum.setPoints(data, idx, idx.length);
+		return sum;
+	}
+
+	private void setPoints(PointData data, int[] idx, int n)
+	{
+		points = new Vec3[n];
+		indices = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			indices[i] = idx[i];
+			points[i] = new Vec3(data.point(idx[i]));
+		}
+	}
+
+	/** Write the summary in the binary form. */
+
+	public void write(DataOutput out) throws IOException
+	{
+		if (points.length > MAX_POINTS)
+			throw new IOException("Too many points for a summary: " + points.length);
+		out.writeInt(MAGIC);
+		out.writeInt(partition);
+		out.writeDouble(reach);
+		out.writeBoolean(sphere != null);
+		if (sphere != null)
+		{
+			out.writeDouble(sphere.center.x);
+			out.writeDouble(sphere.center.y);
+			out.writeDouble(sphere.center.z);
+			out.writeDouble(sphere.radius);
+		}
+		else
+			for (int i = 0; i < 4; i++)
+				out.writeDouble(0.0);
+		out.writeInt(sphere != null ? sphere.fit : BoundingSphere.UNKNOWN);
+		out.writeInt(points.length);
+		for (int i = 0; i < points.length; i++)
+		{
+			out.writeInt(indices[i]);
+			out.writeDouble(points[i].x);
+			out.writeDouble(points[i].y);
+			out.writeDouble(points[i].z);
+		}
+	}
+
+	/** Read a summary from the binary form. */
+
+	public static SphereSummary read(DataInput in) throws IOException
+	{
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a sphere summary");
+		SphereSummary sum = new SphereSummary();
+		sum.partition = in.readInt();
+		sum.reach = in.readDouble();
+		boolean hasSphere = in.readBoolean();
+		Vec3 c = new Vec3(in.readDouble(), in.readDouble(), in.readDouble());
+		double r = in.readDouble();
+		int fit = in.readInt();
+		if (hasSphere)
+			sum.sphere = new BoundingSphere(c, r, fit);
+		int n = in.readInt();
+		if (n < 0 || n > MAX_POINTS)
+			throw new IOException("Bad point count " + n);
+		sum.points = new Vec3[n];
+		sum.indices = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			sum.indices[i] = in.readInt();
+			sum.points[i] = new Vec3(in.readDouble(), in.readDouble(), in.readDouble());
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,573 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+import java.util.Arrays;
+
+/**
+	<b>SphereTree</b> is a bounding volume hierarchy of spheres over a <code>SphereSet</code>.
+	It answers the same ray and frustum queries as the set, but only visits the branches,
+	that the ray or the frustum reaches, so the cost grows roughly with the logarithm of the 
+	number of spheres instead of the number itself.<p>
+
+	The tree is built by splitting the spheres at the median of their centers along the longest
+	axis, until at most eight are left in a leaf. Each node has a sphere, that encloses the 
+	spheres of its children. The nodes are kept in packed arrays in depth first order.<p>
+
+	If the spheres of the set move or change size, <code>refit()</code> updates the node spheres 
+	without building the tree again. If only some of them changed, <code>refit(int[])</code> 
+	updates only the nodes above those. After spheres are added to the set, the tree must be 
+	built again to include them. As the spheres move, the tree may get worse, though it stays
+	correct, and <code>cost()</code> tells when it is worth building again.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SphereTree
+{
+	private static final int LEAF = 8;
+
+	private SphereSet set;
+	private int[] order;                 // indices of the spheres, each leaf has a range of them
+	private int nodes;
+	private double[] nx, ny, nz, nr;     // node spheres
+	private int[] start, end, right;     // range in the order and the right child, -1 for leaves
+	private int[] parent, leafOf;        // parent of each node, -1 for the root, and leaf of each sphere
+	private int[] mark;                  // the refit, that last reached each node
+	private int refits;
+
+	/** Build the tree over the spheres, that are in the set now. */
+
+	public SphereTree(SphereSet set)
+	{
+		this.set = set;
+		int n = set.size();
+		order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		int capacity = Math.max(1, 2*((n+LEAF/2-1)/(LEAF/2)));
+		nx = new double[capacity];
+		ny = new double[capacity];
+		nz = new double[capacity];
+		nr = new double[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		right = new int[capacity];
+		parent = new int[capacity];
+		mark = new int[capacity];
+		leafOf = new int[n];
+		if (n > 0)
+		{
+			build(0, n);
+			parent[0] = -1;
+		}
+	}
+
+	/** The set, that the tree was built on. */
+
+	public SphereSet set()
+	{
+		return set;
+	}
+
+	/** The number of nodes. */
+
+	public int nodes()
+	{
+		return nodes;
+	}
+
+	/** Update the node spheres to the current spheres of the set. */
+
+	public void refit()
+	{
+		// Children come after their parents, so going backwards updates them first.
+
+		for (int node = nodes-1; node >= 0; node--)
+			fit(node);
+	}
+
+	/** 
+		Update the node spheres after the spheres at the given indices have changed. Only the
+		leaves of those spheres and the nodes above them are fitted again.
+	*/
+
+	public void refit(int[] changed)
+	{
+		int[] dirty = new int[Math.min(nodes, changed.length*24+1)];
+		int count = 0;
+		refits++;
+		for (int i : changed)
+			for (int node = leafOf[i]; node >= 0 && mark[node] != refits; node = parent[node])
+			{
+				mark[node] = refits;
+				if (count == dirty.length)
+					dirty = Arrays.copyOf(dirty, Math.min(nodes, count*2));
+				dirty[count++] = node;
+			}
+
+		// Children have higher numbers than their parents.
+
+		Arrays.sort(dirty, 0, count);
+		for (int k = count-1; k >= 0; k--)
+			fit(dirty[k]);
+	}
+
+	/**
+		The sum of the squared radii of the nodes divided by that of the spheres. It is the 
+		expected number of nodes, that a random ray reaches, per sphere it hits, up to a 
+		constant. The lower the better. When the spheres move apart from the ones they were 
+		grouped with, the cost grows.
+	*/
+
+	public double cost()
+	{
+		double nodeArea = 0.0, area = 0.0;
+		for (int node = 0; node < nodes; node++)
+			nodeArea += nr[node]*nr[node];
+		for (int i = 0; i < set.size(); i++)
+			area += set.r[i]*set.r[i];
+		return nodeArea/Math.max(area, Double.MIN_NORMAL);
+	}
+
+	/** 
+		The indices of the spheres, that overlap the given sphere, in increasing order. 
+		Spheres, that only touch it, do not overlap.
+	*/
+
+	public int[] overlapping(Vec3 center, double radius)
+	{
+		double cx = center.x, cy = center.y, cz = center.z;
+		double[] x = set.x, y = set.y, z = set.z, r = set.r;
+		int[] found = new int[16];
+		int n = 0;
+		int[] stack = new int[64];
+		int top = 0;
+		if (nodes > 0)
+			stack[top++] = 0;
+		while (top > 0)
+		{
+			int node = stack[--top];
+			if (! overlaps(nx[node]-cx, ny[node]-cy, nz[node]-cz, nr[node]+radius))
+				continue;
+			if (right[node] < 0)
+			{
+				for (int k = start[node]; k < end[node]; k++)
+				{
+					int i = order[k];
+					if (overlaps(x[i]-cx, y[i]-cy, z[i]-cz, r[i]+radius))
+					{
+						if (n == found.length)
+							found = Arrays.copyOf(found, n*2);
+						found[n++] = i;
+					}
+				}
+				continue;
+			}
+			if (top+2 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length*2);
+			stack[top++] = right[node];
+			stack[top++] = node+1;
+		}
+		found = Arrays.copyOf(found, n);
+		Arrays.sort(found);
+		return found;
+	}
+
+	private static boolean overlaps(double dx, double dy, double dz, double sumOfRadii)
+	{
+		return (dx*dx+dy*dy+dz*dz < sumOfRadii*sumOfRadii);
+	}
+
+	/**
+		Find the sphere, that the ray hits first. Of the spheres at equal distance the one 
+		with the lowest index is taken, like in <code>SphereSet.nearest()</code>.
+
+		@param distance if not <code>null</code>, the distance to the hit is stored in its first element
+		@return the index of the sphere or -1, if the ray hits none
+	*/
+
+	public int nearest(Vec3 origin, Vec3 direction, double[] distance)
+	{
+		double dx = direction.x, dy = direction.y, dz = direction.z;
+		double a = dx*dx+dy*dy+dz*dz;
+		double ox = origin.x, oy = origin.y, oz = origin.z;
+		double[] x = set.x, y = set.y, z = set.z, r = set.r;
+
+		double tBest = Double.POSITIVE_INFINITY;
+		int best = -1;
+		int[] stack = new int[64];
+		double[] stackT = new double[64];
+		int top = 0;
+		if (nodes > 0)
+		{
+			stackT[top] = SphereSet.entry(nx[0]-ox, ny[0]-oy, nz[0]-oz, nr[0], dx, dy, dz, a);
+			stack[top++] = 0;
+		}
+		while (top > 0)
+		{
+			int node = stack[--top];
+			if (stackT[top] > tBest)
+				continue;
+			if (right[node] < 0)
+			{
+				for (int k = start[node]; k < end[node]; k++)
+				{
+					int i = order[k];
+					double t = SphereSet.entry(x[i]-ox, y[i]-oy, z[i]-oz, r[i], dx, dy, dz, a);
+					if (t < tBest || (t == tBest && t < Double.POSITIVE_INFINITY && i < best))
+					{
+						tBest = t;
+						best = i;
+					}
+				}
+				continue;
+			}
+
+			// Push the farther child first, so the nearer is searched first.
+
+			int c1 = node+1, c2 = right[node];
+			double t1 = SphereSet.entry(nx[c1]-ox, ny[c1]-oy, nz[c1]-oz, nr[c1], dx, dy, dz, a);
+			double t2 = SphereSet.entry(nx[c2]-ox, ny[c2]-oy, nz[c2]-oz, nr[c2], dx, dy, dz, a);
+			if (t1 < t2)
+			{
+				int c = c1; c1 = c2; c2 = c;
+				double t = t1; t1 = t2; t2 = t;
+			}
+			if (top+2 > stack.length)
+			{
+				stack = Arrays.copyOf(stack, stack.length*2);
+				stackT = Arrays.copyOf(stackT, stackT.length*2);
+			}
+			if (t1 <= tBest && t1 < Double.POSITIVE_INFINITY)
+			{
+				stackT[top] = t1;
+				stack[top++] = c1;
+			}
+			if (t2 <= tBest && t2 < Double.POSITIVE_INFINITY)
+			{
+				stackT[top] = t2;
+				stack[top++] = c2;
+			}
+		}
+		if (distance != null)
+			distance[0] = tBest;
+		return best;
+	}
+
+	/** The indices of all the spheres, that the ray hits, from the nearest to the farthest. */
+
+	public int[] hits(Vec3 origin, Vec3 direction)
+	{
+		double dx = direction.x, dy = direction.y, dz = direction.z;
+		double a = dx*dx+dy*dy+dz*dz;
+		double ox = origin.x, oy = origin.y, oz = origin.z;
+		double[] x = set.x, y = set.y, z = set.z, r = set.r;
+
+		long[] found = new long[16];
+		int n = 0;
+		int[] stack = new int[64];
+		int top = 0;
+		if (nodes > 0)
+			stack[top++] = 0;
+		while (top > 0)
+		{
+			int node = stack[--top];
+			if (SphereSet.entry(nx[node]-ox, ny[node]-oy, nz[node]-oz, nr[node], dx, dy, dz, a) == Double.POSITIVE_INFINITY)
+				continue;
+			if (right[node] < 0)
+			{
+				for (int k = start[node]; k < end[node]; k++)
+				{
+					int i = order[k];
+					double t = SphereSet.entry(x[i]-ox, y[i]-oy, z[i]-oz, r[i], dx, dy, dz, a);
+					if (t < Double.POSITIVE_INFINITY)
+					{
+						if (n == found.length)
+							found = Arrays.copyOf(found, n*2);
+						found[n++] = SphereSet.sortKey(t, i);
+					}
+				}
+				continue;
+			}
+			if (top+2 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length*2);
+			stack[top++] = right[node];
+			stack[top++] = node+1;
+		}
+		return set.sorted(new long[][] {found}, new int[] {n}, origin, direction);
+	}
+
+	/**
+		Classify each sphere of the set against the frustum, like <code>SphereSet.classify()</code>.
+		A branch, that is wholly inside or outside, is classified without visiting its spheres 
+		and the planes, that a node is wholly inside of, are not tested again below it. The 
+		top branches are classified in parallel. At most 64 planes can be given.
+
+		@param result  receives the classes, at least <code>set().size()</code> long
+		@return the number of spheres, that are not outside
+	*/
+
+	public int classify(Vec3[] normal, double[] offset, final byte[] result)
+	{
+		if (normal.length > 64)
+			throw new IllegalArgumentException("At most 64 planes, " + normal.length + " given");
+		final double[] plane = SphereSet.planes(normal, offset);
+		if (nodes == 0)
+			return 0;
+
+		// Find the roots of the branches to run in parallel by going down from the top,
+		// until there are enough of them.
+
+		int wanted = Chunks.count(set.size(), SphereSet.GRAIN);
+		int[] roots = {0};
+		while (roots.length < wanted)
+		{
+			int[] next = new int[roots.length*2];
+			int n = 0;
+			for (int node : roots)
+			{
+				if (right[node] < 0)
+					next[n++] = node;
+				else
+				{
+					next[n++] = node+1;
+					next[n++] = right[node];
+				}
+			}
+			if (n == roots.length)
+				break;
+			roots = Arrays.copyOf(next, n);
+		}
+
+		final int[] branch = roots;
+		final int[] visible = new int[branch.length];
+		final long all = (plane.length == 256 ? -1L : (1L << plane.length/4)-1);
+		Chunks.run(branch.length, 1, (chunk, from, to) ->
+		{
+			for (int b = from; b < to; b++)
+				visible[b] = classify(branch[b], plane, all, result);
+		});
+		int v = 0;
+		for (int c : visible)
+			v += c;
+		return v;
+	}
+
+	/** Classify the branch under <code>node</code> against the planes in the mask. */
+
+	private int classify(int node, double[] plane, long mask, byte[] result)
+	{
+		double[] x = set.x, y = set.y, z = set.z, r = set.r;
+		int visible = 0;
+		int[] stack = new int[64];
+		long[] stackMask = new long[64];
+		int top = 0;
+		stack[top] = node;
+		stackMask[top++] = mask;
+		while (top > 0)
+		{
+			node = stack[--top];
+			mask = stackMask[top];
+
+			// Drop the planes, that the node is wholly inside of.
+
+			boolean outside = false;
+			for (long m = mask; m != 0; m &= m-1)
+			{
+				int k = Long.numberOfTrailingZeros(m)*4;
+				double s = plane[k]*nx[node]+plane[k+1]*ny[node]+plane[k+2]*nz[node]-plane[k+3];
+				if (s < -nr[node])
+				{
+					outside = true;
+					break;
+				}
+				if (s >= nr[node])
+					mask &= ~(1L << k/4);
+			}
+			if (outside || mask == 0)
+			{
+				byte c = (outside ? SphereSet.OUTSIDE : SphereSet.INSIDE);
+				for (int k = start[node]; k < end[node]; k++)
+					result[order[k]] = c;
+				if (! outside)
+					visible += end[node]-start[node];
+				continue;
+			}
+			if (right[node] < 0)
+			{
+				for (int k = start[node]; k < end[node]; k++)
+				{
+					int i = order[k];
+					byte c = SphereSet.INSIDE;
+					for (long m = mask; m != 0; m &= m-1)
+					{
+						int p = Long.numberOfTrailingZeros(m)*4;
+						double s = plane[p]*x[i]+plane[p+1]*y[i]+plane[p+2]*z[i]-plane[p+3];
+						if (s < -r[i])
+						{
+							c = SphereSet.OUTSIDE;
+							break;
+						}
+						if (s < r[i])
+							c = SphereSet.INTERSECTING;
+					}
+					result[i] = c;
+					if (c != SphereSet.OUTSIDE)
+						visible++;
+				}
+				continue;
+			}
+			if (top+2 > stack.length)
+			{
+				stack = Arrays.copyOf(stack, stack.length*2);
+				stackMask = Arrays.copyOf(stackMask, stackMask.length*2);
+			}
+			stack[top] = right[node];
+			stackMask[top++] = mask;
+			stack[top] = node+1;
+			stackMask[top++] = mask;
+		}
+		return visible;
+	}
+
+	/** Build the branch of the spheres from <code>from</code> to <code>to</code> in the order. */
+
+	private int build(int from, int to)
+	{
+		int node = nodes++;
+		start[node] = from;
+		end[node] = to;
+		right[node] = -1;
+		if (to-from > LEAF)
+		{
+			// Split at the median along the longest axis of the centers.
+
+			double[][] axes = {set.x, set.y, set.z};
+			double longest = -1.0;
+			double[] key = set.x;
+			for (double[] c : axes)
+			{
+				double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+				for (int k = from; k < to; k++)
+				{
+					min = Math.min(min, c[order[k]]);
+					max = Math.max(max, c[order[k]]);
+				}
+				if (max-min > longest)
+				{
+					longest = max-min;
+					key = c;
+				}
+			}
+			int mid = (from+to) >>> 1;
+			select(key, from, to-1, mid);
+			parent[build(from, mid)] = node;
+			right[node] = build(mid, to);
+			parent[right[node]] = node;
+		}
+		else
+			for (int k = from; k < to; k++)
+				leafOf[order[k]] = node;
+		fit(node);
+		return node;
+	}
+
+	/** Move the <code>k</code>:th smallest by the key into its place in the order. */
+
+	private void select(double[] key, int lo, int hi, int k)
+	{
+		while (hi > lo)
+		{
+			double pivot = key[order[(lo+hi) >>> 1]];
+			int i = lo, j = hi;
+			while (i <= j)
+			{
+				while (key[order[i]] < pivot)
+					i++;
+				while (key[order[j]] > pivot)
+					j--;
+				if (i <= j)
+				{
+					int t = order[i]; order[i] = order[j]; order[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/** Set the sphere of a node from its children or, for a leaf, from its spheres. */
+
+	private void fit(int node)
+	{
+		if (right[node] < 0)
+		{
+			int i = order[start[node]];
+			nx[node] = set.x[i];
+			ny[node] = set.y[i];
+			nz[node] = set.z[i];
+			nr[node] = set.r[i];
+			for (int k = start[node]+1; k < end[node]; k++)
+			{
+				i = order[k];
+				grow(node, set.x[i], set.y[i], set.z[i], set.r[i]);
+			}
+		}
+		else
+		{
+			int c = node+1;
+			nx[node] = nx[c];
+			ny[node] = ny[c];
+			nz[node] = nz[c];
+			nr[node] = nr[c];
+			c = right[node];
+			grow(node, nx[c], ny[c], nz[c], nr[c]);
+		}
+	}
+
+	/** Grow the node sphere to enclose another, like <code>BoundingSphere.enclose()</code>. */
+
+	private void grow(int node, double cx, double cy, double cz, double radius)
+	{
+		double dx = cx-nx[node], dy = cy-ny[node], dz = cz-nz[node];
+		double d = Math.sqrt(dx*dx+dy*dy+dz*dz);
+		if (d+radius <= nr[node])
+			return;
+		if (d+nr[node] <= radius)
+		{
+			nx[node] = cx;
+			ny[node] = cy;
+			nz[node] = cz;
+			nr[node] = radius;
+			return;
+		}
+		double rNew = (d+nr[node]+radius)*0.5;
+		double f = (rNew-nr[node])/d;
+		double x = nx[node]+dx*f, y = ny[node]+dy*f, z = nz[node]+dz*f;
+
+		// Take the rounding outwards.
+
+		double d1 = Math.sqrt((x-nx[node])*(x-nx[node])+(y-ny[node])*(y-ny[node])+(z-nz[node])*(z-nz[node]));
+		double d2 = Math.sqrt((x-cx)*(x-cx)+(y-cy)*(y-cy)+(z-cz)*(z-cz));
+		rNew = Math.max(rNew, Math.max(d1+nr[node], d2+radius));
+		nx[node] = x;
+		ny[node] = y;
+		nz[node] = z;
+		nr[node] = Math.nextUp(rNew);
+	}
+}
@@ -0,0 +1,251 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.ArrayList;
+
+/**
+	<b>SweptSphere</b> bounds an object over a time interval, for motion blur and for 
+	continuous collision checks. The mesh is solved once, in its local coordinates, and
+	after that each bound is made from the local sphere and the transforms alone, without
+	reading the mesh again.<p>
+
+	Between two keyframes the position is blended linearly and the rotation is interpolated 
+	by angle, the shorter way around the axis of the rotation from one key to the other, as
+	the rotation keys of Art of Illusion do. The center of the local sphere then moves along 
+	an arc, whose radius is at most its distance from the origin of the object. The sphere 
+	around the spheres at the two keys is grown by the sagitta of that arc, the furthest the 
+	arc can get from its chord, so it bounds the whole interval. A linear blend of the two 
+	matrices moves the center along the chord and is bounded as well. Tracks, that turn an 
+	object more than half a turn between two keys, need keyframes in between.<p>
+
+	Scaling is taken into account by the largest scale factor of each transform, so the 
+	bounds also hold for non-uniform and sheared transforms.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class SweptSphere
+{
+	private BoundingSphere local;
+
+	/** Use a sphere, that has been fitted in the local coordinates of the object. */
+
+	public SweptSphere(BoundingSphere local)
+	{
+		this.local = local;
+	}
+
+	/**
+		Fit the local sphere to an object. If no preview mesh is available the bounding box 
+		is used.
+	*/
+
+	public SweptSphere(ObjectInfo info)
+	{
+		Vec3[] vert;
+		if (info.getPreviewMesh() == null)
+			vert = info.getBounds().getCorners();
+		else
+			vert = info.getPreviewMesh().vert;
+		local = new GeoFit().boundingSphere(vert);
+		local.infoID = info.getId();
+	}
+
+	/** The sphere in the local coordinates of the object. */
+
+	public BoundingSphere local()
+	{
+		return local;
+	}
+
+	/** The sphere of the object, when it is placed by the given transform. */
+
+	public BoundingSphere at(Mat4 toScene)
+	{
+		double[] scale = scales(toScene);
+		int fit = (scale[1] <= scale[0]*(1.0+1e-9) ? local.fit : BoundingSphere.NON_MINIMAL);
+		BoundingSphere bou = new BoundingSphere(toScene.times(local.center), local.radius*scale[1], fit, local.infoID);
+		bou.timeUnit = "millisecond";
+		bou.metatext = "Created by SweptSphere.at()";
+		if (local.supportPositions != null && fit != BoundingSphere.NON_MINIMAL)
+		{
+			bou.supportPositions = new ArrayList<Vec3>();
+			for (Vec3 s : local.supportPositions)
+				bou.supportPositions.add(toScene.times(s));
+		}
+		return bou;
+	}
+
+	/** The bound of the object, while it moves and turns from one placement to the other. */
+
+	public BoundingSphere sweep(CoordinateSystem start, CoordinateSystem end)
+	{
+		return sweep(new Mat4[] {start.fromLocal(), end.fromLocal()});
+	}
+
+	/** The bound of the object, while its transform is interpolated from one matrix to the other. */
+
+	public BoundingSphere sweep(Mat4 start, Mat4 end)
+	{
+		return sweep(new Mat4[] {start, end});
+	}
+
+	/** 
+		The bound of the object, while its transform goes through the keyframes in order. 
+		Each interval between two keys is bounded as a sphere grown by the sagitta of the arc.
+	*/
+
+	public BoundingSphere sweep(Mat4[] keys)
+	{
+		long t0 = System.nanoTime();
+		BoundingSphere bou = at(keys[0]);
+		for (int k = 1; k < keys.length; k++)
+		{
+			BoundingSphere span = at(keys[k-1]).enclose(at(keys[k]));
+			span.radius = Math.nextUp(span.radius+sagitta(keys[k-1], keys[k]));
+			bou = bou.enclose(span);
+		}
+
+		bou.fit = BoundingSphere.NON_MINIMAL;
+		bou.infoID = local.infoID;
+		bou.supportPositions = null;
+		bou.solverTime = (System.nanoTime()-t0)*1e-6;
+		bou.timeUnit = "millisecond";
+		bou.metatext = "Created by SweptSphere.sweep()";
+		return bou;
+	}
+
+	/**
+		How far the center of the local sphere can get from the chord between its positions 
+		at the two keys, when the rotation is interpolated by angle. It turns along an arc 
+		of at most the angle between the two orientations and of a radius no larger than its 
+		offset from the origin, so the arc stays within <code>offset*(1-cos(angle/2))</code> of 
+		the chord. The orientations are the columns of the 3x3 parts scaled to unit length. If 
+		they are not a rotation, the transform may be sheared and a half turn is assumed.
+	*/
+
+	private double sagitta(Mat4 start, Mat4 end)
+	{
+		double offset = Math.max(start.timesDirection(local.center).length(), end.timesDirection(local.center).length());
+		if (offset == 0.0)
+			return 0.0;
+		double[][] a = axes(start), b = axes(end);
+		double cosHalf = 0.0;
+		if (a != null && b != null)
+		{
+			// The trace of the relative rotation gives its angle.
+
+			double trace = 0.0;
+			for (int j = 0; j < 3; j++)
+				trace += a[j][0]*b[j][0]+a[j][1]*b[j][1]+a[j][2]*b[j][2];
+			cosHalf = Math.sqrt(Math.max(0.0, Math.min(1.0, (trace+1.0)*0.25)));
+		}
+		return offset*(1.0-cosHalf)*(1.0+1e-12);
+	}
+
+	/** The columns of the 3x3 part of the matrix at unit length, or <code>null</code> if they are not a rotation. */
+
+	private static double[][] axes(Mat4 m)
+	{
+		double[][] axis = {{m.m11, m.m21, m.m31}, {m.m12, m.m22, m.m32}, {m.m13, m.m23, m.m33}};
+		for (double[] u : axis)
+		{
+			double length = Math.sqrt(u[0]*u[0]+u[1]*u[1]+u[2]*u[2]);
+			if (length == 0.0)
+				return null;
+			u[0] /= length;
+			u[1] /= length;
+			u[2] /= length;
+		}
+		double[] x = axis[0], y = axis[1], z = axis[2];
+		double xy = x[0]*y[0]+x[1]*y[1]+x[2]*y[2];
+		double xz = x[0]*z[0]+x[1]*z[1]+x[2]*z[2];
+		double yz = y[0]*z[0]+y[1]*z[1]+y[2]*z[2];
+		double det = x[0]*(y[1]*z[2]-y[2]*z[1])-x[1]*(y[0]*z[2]-y[2]*z[0])+x[2]*(y[0]*z[1]-y[1]*z[0]);
+		if (Math.abs(xy) > 1e-9 || Math.abs(xz) > 1e-9 || Math.abs(yz) > 1e-9 || det <= 0.0)
+			return null;
+		return axis;
+	}
+
+	/** 
+		The largest factor, by which the transform can stretch a distance. This is the 
+		largest singular value of the 3x3 part of the matrix.
+	*/
+
+	static double maxScale(Mat4 m)
+	{
+		return scales(m)[1];
+	}
+
+	/**
+		Move a sphere, that was fitted in the local coordinates of an object, to the scene.
+		The center and the support positions are transformed in place and the radius and the
+		error are multiplied by the largest scale factor. If the scaling is not uniform, the
+		sphere still encloses the points, but is no longer the smallest one.
+	*/
+
+	static void place(BoundingSphere bou, Mat4 toScene)
+	{
+		double[] scale = scales(toScene);
+		toScene.transform(bou.center);
+		if (bou.supportPositions != null)
+			for (Vec3 s : bou.supportPositions)
+				toScene.transform(s);
+		bou.radius *= scale[1];
+		bou.error *= scale[1];
+		if (scale[1] > scale[0]*(1.0+1e-9) && bou.fit == BoundingSphere.EXACT)
+			bou.fit = BoundingSphere.NON_MINIMAL;
+	}
+
+	/**
+		The smallest and the largest singular value of the 3x3 part of the matrix. They are
+		the square roots of the eigenvalues of the symmetric matrix L<sup>T</sup>L, which are 
+		found in closed form. The largest one is rounded up, so that it is safe to use as a 
+		bound.
+	*/
+
+	static double[] scales(Mat4 m)
+	{
+		double a11 = m.m11*m.m11+m.m21*m.m21+m.m31*m.m31;
+		double a22 = m.m12*m.m12+m.m22*m.m22+m.m32*m.m32;
+		double a33 = m.m13*m.m13+m.m23*m.m23+m.m33*m.m33;
+		double a12 = m.m11*m.m12+m.m21*m.m22+m.m31*m.m32;
+		double a13 = m.m11*m.m13+m.m21*m.m23+m.m31*m.m33;
+		double a23 = m.m12*m.m13+m.m22*m.m23+m.m32*m.m33;
+
+		double min, max;
+		double off = a12*a12+a13*a13+a23*a23;
+		double trace = a11+a22+a33;
+		if (off <= 1e-30*trace*trace)
+		{
+			min = Math.min(a11, Math.min(a22, a33));
+			max = Math.max(a11, Math.max(a22, a33));
+		}
+		else
+		{
+			double q = trace/3.0;
+			double b11 = a11-q, b22 = a22-q, b33 = a33-q;
+			double p = Math.sqrt((b11*b11+b22*b22+b33*b33+2.0*off)/6.0);
+			double det = b11*(b22*b33-a23*a23)-a12*(a12*b33-a23*a13)+a13*(a12*a23-b22*a13);
+			double h = Math.max(-1.0, Math.min(1.0, det/(2.0*p*p*p)));
+			double phi = Math.acos(h)/3.0;
+			max = q+2.0*p*Math.cos(phi);
+			min = q+2.0*p*Math.cos(phi+2.0*Math.PI/3.0);
+		}
+
+		// The closed form loses a few digits. The bound is grown by much more than that.
+
+		return new double[] {Math.sqrt(Math.max(0.0, min)), Math.sqrt(Math.max(0.0, max))*(1.0+1e-12)};
+	}
+}
@@ -0,0 +1,175 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.math.*;
+
+/**
+	<b>Vec3Points</b> presents an array of <code>Vec3</code> as <code>PointData</code>.
+	The points are used as they are, so there is no error. Only the beginning of the
+	array may be used, so that an array with room to grow can be solved as it is.
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class Vec3Points implements PointData
+{
+	private Vec3[] vertex;
+	private int count;
+
+	public Vec3Points(Vec3[] vertex)
+	{
+		this(vertex, vertex.length);
+	}
+
+	/** Use the first <code>count</code> points of the array. */
+
+	public Vec3Points(Vec3[] vertex, int count)
+	{
+		this.vertex = vertex;
+		this.count = count;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	/** The point itself, not a copy. */
+
+	public Vec3 point(int i)
+	{
+		return vertex[i];
+	}
+
+	public void bounds(double[] box)
+	{
+		// The classical way would be to set the min and max values to the opposite 
+		// infinity, but we can as well start at one of the existing points.
+
+		double minX, maxX, minY, maxY, minZ, maxZ;
+		minX = maxX = vertex[0].x; 
+		minY = maxY = vertex[0].y; 
+		minZ = maxZ = vertex[0].z; 
+		
+		Vec3 v;
+		for (int i = 0; i < count; i++)
+		{
+			v = vertex[i];
+			minX = Math.min(minX, v.x);
+			maxX = Math.max(maxX, v.x);
+			minY = Math.min(minY, v.y);
+			maxY = Math.max(maxY, v.y);
+			minZ = Math.min(minZ, v.z);
+			maxZ = Math.max(maxZ, v.z);
+		}
+		box[0] = minX; box[1] = minY; box[2] = minZ;
+		box[3] = maxX; box[4] = maxY; box[5] = maxZ;
+	}
+
+	public int mostDistant(double x, double y, double z, double limitDist2)
+	{
+		int mostDistant = -1;
+		double r2last = limitDist2;
+		double dx, dy, dz, r2v;
+		for (int i = 0; i < count; i++)
+		{
+			dx = vertex[i].x-x;
+			dy = vertex[i].y-y;
+			dz = vertex[i].z-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = i;
+				r2last = r2v;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int mostDistant(double x, double y, double z, int from, int to, double stopDist2)
+	{
+		int mostDistant = -1;
+		double r2last = -1.0;
+		double dx, dy, dz, r2v;
+		for (int i = from; i < to; i++)
+		{
+			dx = vertex[i].x-x;
+			dy = vertex[i].y-y;
+			dz = vertex[i].z-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > r2last)
+			{
+				mostDistant = i;
+				r2last = r2v;
+				if (r2v > stopDist2)
+					break;
+			}
+		}
+		return mostDistant;
+	}
+
+	public int[] farthest(double x, double y, double z, int k, double limitDist2)
+	{
+		Farthest far = new Farthest(k, limitDist2);
+		double dx, dy, dz, r2v;
+		for (int i = 0; i < count; i++)
+		{
+			dx = vertex[i].x-x;
+			dy = vertex[i].y-y;
+			dz = vertex[i].z-z;
+			r2v = dx*dx+dy*dy+dz*dz;
+			if (r2v > far.threshold)
+				far.offer(i, r2v);
+		}
+		return far.indices();
+	}
+
+	public void extremes(double[][] dir, int from, int to, int[] extreme, double[] projection)
+	{
+		for (int d = 0; d < dir.length; d++)
+		{
+			projection[d*2] = Double.POSITIVE_INFINITY;
+			projection[d*2+1] = Double.NEGATIVE_INFINITY;
+		}
+		double x, y, z, s;
+		for (int i = from; i < to; i++)
+		{
+			x = vertex[i].x;
+			y = vertex[i].y;
+			z = vertex[i].z;
+			for (int d = 0; d < dir.length; d++)
+			{
+				s = dir[d][0]*x+dir[d][1]*y+dir[d][2]*z;
+				if (s < projection[d*2])
+				{
+					projection[d*2] = s;
+					extreme[d*2] = i;
+				}
+				if (s > projection[d*2+1])
+				{
+					projection[d*2+1] = s;
+					extreme[d*2+1] = i;
+				}
+			}
+		}
+	}
+
+	public void hash(PointHash hash)
+	{
+		for (int i = 0; i < count; i++)
+			hash.add(vertex[i].x, vertex[i].y, vertex[i].z);
+	}
+
+	public double errorBound()
+	{
+		return 0.0;
+	}
+}
@@ -0,0 +1,459 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package artofillusion.boundingsphere;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+	<b>Welzl</b> is an exact reference solver for the minimal bounding sphere. It is the
+	randomized algorithm of Emo Welzl (1991) with the move-to-front and pivoting
+	improvements by Bernd G&auml;rtner, "Fast and Robust Smallest Enclosing Balls" (1999).<p>
+
+	The recursion of the original algorithm has been unrolled into an explicit stack.
+	In 3D-space the stack can never be deeper than the four support points, that define
+	a sphere. The points are kept in a linked list of indices, so the vertex array of the
+	caller is never reordered.<p>
+
+	The solver is meant to be used as a baseline, to validate and time <code>GeoFit</code>.
+	The result is given in the same <code>BoundingSphere</code> form.<p>
+
+	@author Petri Ihalainen
+	@author (peteihis)
+	@version 0.01, for Art of Illusion
+*/
+
+public class Welzl
+{
+	private static final int NIL = -1;
+
+	// Relative tolerance of the squared radius. Points closer to the surface than
+	// this, plus the rounding of the coordinates, are taken as inside. Without it
+	// co-spherical points, such as vertices of a tessellated sphere, would be pushed
+	// on the boundary in an endless succession.
+
+	private static final double EPS = 1e-13;
+
+	private Vec3[] vertex;
+	private int[] next, prev;
+	private int head, supportEnd;
+	private int[] support;
+	private int supportSize, passes;
+	private double cx, cy, cz, radius2, limit2; // limit2 includes the tolerance
+	private long t0, t1;
+	private Random random;
+	private boolean shuffle;
+	private SolverMetrics metrics;
+	private MetricsRecorder recorder;
+
+	// The explicit recursion stack of the move-to-front procedure.
+	// Level k is running with k points forced onto the boundary.
+
+	private int[] stackNext = new int[5], stackEnd = new int[5], stackPushed = new int[5];
+
+	/** Create the solver. The shuffling of the input uses a fixed seed. */
+
+	public Welzl()
+	{
+		random = new Random(0);
+		support = new int[4];
+		shuffle = true;
+	}
+
+	/** Create the solver with a given seed for the shuffling of the input. */
+
+	public Welzl(long seed)
+	{
+		random = new Random(seed);
+		support = new int[4];
+		shuffle = true;
+	}
+
+	/**
+		Set wether the points are shuffled before solving. The pivoting makes the
+		solver independent of the input order in practice, and without shuffling the
+		scans run through memory in order, which is a lot faster on large data.
+	*/
+
+	public boolean shuffle(boolean shuffle)
+	{
+		this.shuffle = shuffle;
+		return shuffle;
+	}
+
+	/** Check if the points are shuffled. */
+
+	public boolean shuffle()
+	{
+		return shuffle;
+	}
+
+	/** Set a recorder, that receives the metrics of every solve. Use <code>null</code> for none. */
+
+	public MetricsRecorder recorder(MetricsRecorder recorder)
+	{
+		this.recorder = recorder;
+		return recorder;
+	}
+
+	/** Check the current recorder. */
+
+	public MetricsRecorder recorder()
+	{
+		return recorder;
+	}
+
+	/** Calculate a bounding sphere for a set of vertices. */
+
+	public BoundingSphere boundingSphere(Vec3[] vertex)
+	{
+		passes = 0;
+		metrics = new SolverMetrics("Welzl");
+		SolveEvent event = new SolveEvent();
+		event.begin();
+		calculateParameters(vertex);
+
+		BoundingSphere bou = new BoundingSphere(new Vec3(cx, cy, cz), Math.sqrt(radius2), BoundingSphere.EXACT);
+		bou.error = error();
+		bou.solverTime = (t1-t0)*1e-6;
+		bou.timeUnit = "millisecond";
+		bou.passes = passes;
+		bou.metatext = "Created by Welzl.boundingSphere()";
+
+		bou.supportPositions = new ArrayList<Vec3>();
+		bou.supportIndices = new ArrayList<Integer>();
+		for (int s = 0; s < supportSize; s++)
+		{
+			bou.supportPositions.add(new Vec3(vertex[support[s]]));
+			bou.supportIndices.add(support[s]);
+		}
+		this.vertex = null;
+
+		metrics.points = vertex.length;
+		metrics.passes = passes;
+		metrics.totalNanos = t1-t0;
+		metrics.countAllocation();
+		bou.metrics = metrics;
+		if (recorder != null)
+			recorder.record(metrics);
+		event.finish(bou, metrics);
+
+		return bou;
+	}
+
+	/** Calculate a bounding sphere for an object in a scene.
+	    If no preview mesh is available the bounding box is used.*/
+
+	public BoundingSphere boundingSphere(ObjectInfo info)
+	{
+		Vec3[] vert;
+		if (info.getPreviewMesh() == null)
+			vert = info.getBounds().getCorners();
+		else
+			vert = info.getPreviewMesh().vert;
+
+		BoundingSphere bou = boundingSphere(vert);
+		bou.infoID = info.getId();
+
+		SweptSphere.place(bou, info.getCoords().fromLocal());
+		return bou;
+	}
+
+	/** Calculate a bounding sphere for a group of objects */
+
+	public BoundingSphere boundingSphere(ArrayList<ObjectInfo> infoList)
+	{
+		ArrayList<Vec3> vertexList = new ArrayList<Vec3>();
+		Mat4 toScene;
+		Vec3[] vObj;
+		for (ObjectInfo info: infoList)
+		{
+			toScene = info.getCoords().fromLocal();
+			if (info.getPreviewMesh() == null)
+				vObj = info.getBounds().getCorners();
+			else
+				vObj = info.getPreviewMesh().vert;
+			for(Vec3 v: vObj)
+				vertexList.add(toScene.times(v));
+		}
+
+		Vec3[] vertex = new Vec3[vertexList.size()];
+		for(int i = 0; i < vertex.length; i++)
+			vertex[i] = vertexList.get(i);
+		return boundingSphere(vertex);
+	}
+
+	/**
+		The pivoting loop. Each round scans the points, that are not already in the
+		front of the list, for the one furthest outside. That point is forced on the
+		boundary and the move-to-front procedure is run over the front of the list.
+	*/
+
+	private void calculateParameters(Vec3[] vertex)
+	{
+		t0 = System.nanoTime();
+		this.vertex = vertex;
+		int n = vertex.length;
+
+		// Randomize the order of the linked list.
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		for (int i = n-1; i > 0 && shuffle; i--)
+		{
+			int j = random.nextInt(i+1);
+			int o = order[i];
+			order[i] = order[j];
+			order[j] = o;
+		}
+		next = new int[n];
+		prev = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			next[order[i]] = (i < n-1 ? order[i+1] : NIL);
+			prev[order[i]] = (i > 0 ? order[i-1] : NIL);
+		}
+		head = order[0];
+		metrics.initNanos = System.nanoTime()-t0;
+
+		// Start from the first point alone
+
+		supportSize = 0;
+		radius2 = limit2 = -1.0;
+		int t = next[head];
+		moveToFront(t);
+
+		double maxExcess, oldRadius2;
+		do
+		{
+			int pivot = NIL;
+			maxExcess = 0.0;
+			passes++;
+			long tr = System.nanoTime();
+			PassEvent passEvent = new PassEvent();
+			passEvent.begin();
+			for (int k = t; k != NIL; k = next[k])
+			{
+				metrics.pointsScanned++;
+				double e = excess(k);
+				if (e > maxExcess)
+				{
+					maxExcess = e;
+					pivot = k;
+				}
+			}
+			oldRadius2 = radius2;
+			long ts = System.nanoTime();
+			metrics.rescanNanos += ts-tr;
+			passEvent.finish(metrics.solver, vertex.length, passes, supportSize);
+			if (pivot != NIL)
+			{
+				t = supportEnd;
+				if (t == pivot)
+					t = next[t];
+				if (push(pivot))
+				{
+					moveToFront(supportEnd);
+					pop();
+				}
+				unlinkToFront(pivot);
+				metrics.supportChanges++;
+			}
+			metrics.subGroupNanos += System.nanoTime()-ts;
+		}
+		while (maxExcess > 0.0 && radius2 > oldRadius2);
+
+		// Grow the radius to reach the points, that were taken as inside within the
+		// tolerance, so that none is left outside.
+
+		passes++;
+		for (int k = head; k != NIL; k = next[k])
+			radius2 = Math.max(radius2, distance2(k));
+		metrics.pointsScanned += n;
+
+		// The points in front of the list, up to the support end, define the sphere.
+
+		supportSize = 0;
+		for (int k = head; k != supportEnd && supportSize < 4; k = next[k])
+			support[supportSize++] = k;
+
+		t1 = System.nanoTime();
+	}
+
+	/**
+		The move-to-front procedure, run over the list from its head up to <code>end</code>,
+		with the current supports forced on the boundary. Each point that is found outside
+		is pushed on the boundary, the procedure is repeated for the points in front of it
+		and then the point is moved to the head of the list.
+	*/
+
+	private void moveToFront(int end)
+	{
+		supportEnd = head;
+		if (supportSize == 4)
+			return;
+
+		int level = 0;
+		stackNext[0] = head;
+		stackEnd[0] = end;
+
+		while (level >= 0)
+		{
+			int k = stackNext[level];
+			if (k == stackEnd[level])
+			{
+				// This level is done. Return to the one that pushed the point.
+
+				level--;
+				if (level >= 0)
+				{
+					pop();
+					unlinkToFront(stackPushed[level]);
+				}
+				continue;
+			}
+			stackNext[level] = next[k];
+
+			if (excess(k) > 0.0 && push(k))
+			{
+				stackPushed[level] = k;
+				supportEnd = head;
+				if (supportSize == 4)
+				{
+					pop();
+					unlinkToFront(k);
+					continue;
+				}
+				level++;
+				stackNext[level] = head;
+				stackEnd[level] = k;
+			}
+		}
+	}
+
+	/** Move a point to the head of the list. */
+
+	private void unlinkToFront(int j)
+	{
+		if (supportEnd == j)
+			supportEnd = next[j];
+		if (j == head)
+			return;
+
+		next[prev[j]] = next[j];
+		if (next[j] != NIL)
+			prev[next[j]] = prev[j];
+		next[j] = head;
+		prev[j] = NIL;
+		prev[head] = j;
+		head = j;
+	}
+
+	/** How far outside the current sphere the point is, as squared distance. */
+
+	private double excess(int k)
+	{
+		return distance2(k)-limit2;
+	}
+
+	/** Squared distance of a point from the current center. */
+
+	private double distance2(int k)
+	{
+		Vec3 v = vertex[k];
+		double dx = v.x-cx, dy = v.y-cy, dz = v.z-cz;
+		return dx*dx+dy*dy+dz*dz;
+	}
+
+	/**
+		Add a point to the boundary and calculate the smallest sphere, that has all the
+		boundary points on its surface. If the boundary would become affinely dependent,
+		the point is rejected and the sphere is left as it was.
+	*/
+
+	private boolean push(int k)
+	{
+		Vec3 p0 = vertex[supportSize == 0 ? k : support[0]];
+		double x, y, z;
+
+		if (supportSize == 0)
+		{
+			x = p0.x;
+			y = p0.y;
+			z = p0.z;
+		}
+		else if (supportSize == 1)
+		{
+			Vec3 p1 = vertex[k];
+			x = (p0.x+p1.x)*0.5;
+			y = (p0.y+p1.y)*0.5;
+			z = (p0.z+p1.z)*0.5;
+		}
+		else if (supportSize == 2)
+		{
+			Vec3 a = vertex[support[1]].minus(p0);
+			Vec3 b = vertex[k].minus(p0);
+			if (a.cross(b).length2() <= 1e-24*a.length2()*b.length2())
+				return false;
+			Vec3 c = Circumcenter.of3(p0, vertex[support[1]], vertex[k]);
+			x = c.x;
+			y = c.y;
+			z = c.z;
+		}
+		else
+		{
+			Vec3 a = vertex[support[1]].minus(p0);
+			Vec3 b = vertex[support[2]].minus(p0);
+			Vec3 c = vertex[k].minus(p0);
+			if (Math.abs(a.dot(b.cross(c))) <= 1e-12*Math.sqrt(a.length2()*b.length2()*c.length2()))
+				return false;
+			Vec3 m = Circumcenter.of4(p0, vertex[support[1]], vertex[support[2]], vertex[k]);
+			x = m.x;
+			y = m.y;
+			z = m.z;
+		}
+
+		support[supportSize++] = k;
+		cx = x;
+		cy = y;
+		cz = z;
+
+		// The radius is the largest of the measured support distances, so that
+		// numerical drift can not leave any of the supports outside.
+
+		radius2 = 0.0;
+		for (int s = 0; s < supportSize; s++)
+			radius2 = Math.max(radius2, distance2(support[s]));
+		limit2 = radius2*(1.0+EPS)+Circumcenter.rounding2(cx, cy, cz, radius2);
+		return true;
+	}
+
+	/** Remove the last boundary point. The sphere is left as it was. */
+
+	private void pop()
+	{
+		supportSize--;
+	}
+
+	/**
+		Calculate the difference between the largest and smallest
+		center-to-support distances.
+	*/
+
+	private double error()
+	{
+		double r2min = radius2;
+		for (int s = 0; s < supportSize; s++)
+			r2min = Math.min(r2min, distance2(support[s]));
+		return Math.sqrt(radius2)-Math.sqrt(r2min);
+	}
+}
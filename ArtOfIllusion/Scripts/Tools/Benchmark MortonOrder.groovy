@@ -0,0 +1,72 @@
+
+// A benchmark of the spatial reordering of point data.
+// The script creates a cloud, where the Vec3 objects are scattered around the heap 
+// in random order, like the vertices of a mesh, that has been edited for a while.
+// Then it solves the cloud as it is and after MortonOrder has copied it into order. 
+// Java can not read the cache miss counters of the processor, so the time per point 
+// per pass is printed instead. For the real miss counts run Art of Illusion under 
+// 'perf stat -e cache-misses'.
+
+import artofillusion.boundingsphere.*;
+
+// ===    USER PARAMETERS     ===
+
+n = 2000000; // number of points
+runs = 10;   // number of solves of each kind
+
+// === END OF USER PARAMETERS ===
+
+rand = new Random(0);
+geofit = new GeoFit();
+
+double nsPerPoint(BoundingSphere b, int n)
+{
+	return b.solverTime*1e6/(b.passes*(double)n);
+}
+
+Thread.start
+{
+	println("\nCreating " + n + " points in scattered order...");
+	scattered = new Vec3[n];
+	for (i = 0; i < n; i++)
+		scattered[i] = new Vec3(rand.nextGaussian(), rand.nextGaussian(), rand.nextGaussian());
+	Collections.shuffle(Arrays.asList(scattered), rand);
+
+	t = System.nanoTime();
+	morton = new MortonOrder(scattered);
+	println("Finding the order took " + (System.nanoTime()-t)*1e-6 + " ms");
+	t = System.nanoTime();
+	sorted = morton.reorder(scattered);
+	println("Reordering took " + (System.nanoTime()-t)*1e-6 + " ms");
+
+	xyz = new float[n*3];
+	for (i = 0; i < n; i++)
+	{
+		xyz[i*3] = (float)sorted[i].x; xyz[i*3+1] = (float)sorted[i].y; xyz[i*3+2] = (float)sorted[i].z;
+	}
+	floats = new FloatPoints(xyz);
+
+	sSum = 0.0; mSum = 0.0; fSum = 0.0;
+	println("\nNanoseconds per point per pass\nScattered\tMorton\t\tMorton floats");
+	for (run = 0; run < runs; run++)
+	{
+		s = nsPerPoint(geofit.boundingSphere(scattered), n);
+		m = nsPerPoint(geofit.boundingSphere(sorted), n);
+		f = nsPerPoint(geofit.boundingSphere(floats), n);
+		sSum += s; mSum += m; fSum += f;
+		println(String.format("%.3f\t\t%.3f\t\t%.3f", s, m, f));
+	}
+	println("\nAverage speed-up by the Morton order " + sSum/mSum);
+	println("Average speed-up by the Morton order and floats " + sSum/fSum);
+
+	// Map the supports back to the original order.
+
+	b = geofit.boundingSphere(sorted);
+	print("\nSupports at the original indices");
+	for (k = 0; k < n; k++)
+		for (s in b.supportPositions)
+			if (sorted[k].equals(s))
+				print(" " + morton.original(k));
+	println();
+
+} // thread
@@ -0,0 +1,129 @@
+
+// A differential test of GeoFit against the exact reference solver Welzl.
+// The script creates random and adversarial point clouds, has both solvers
+// produce a bounding sphere on each and reports every case, where the results
+// disagree. In the end it prints a summary of radii, support counts and times.
+
+import artofillusion.boundingsphere.*;
+
+// ===    USER PARAMETERS     ===
+
+clouds = 100000; // number of point clouds
+nMax = 64;       // maximum number of points in a cloud
+tol = 1e-9;      // relative tolerance of the radius comparison
+reportMax = 20;  // number of disagreeing cases to print out
+
+//clouds = 200;  // alternative values for fewer, but larger clouds
+//nMax = 100000;
+
+// === END OF USER PARAMETERS ===
+
+rand = new Random(0);
+
+// The cloud types. The adversarial ones have lots of points on the same
+// line, plane or sphere, or points that are numerically very close.
+
+kinds = ["box", "gauss", "shell", "grid", "plane", "line", "duplicates", "far offset", "tiny"];
+
+Vec3 randomDirectionVector()
+{
+	Vec3 v = new Vec3();
+	while (v.length() > 1.0 || v.length() == 0.0)
+	{
+		v.x = rand.nextDouble()*2.0-1.0;
+		v.y = rand.nextDouble()*2.0-1.0;
+		v.z = rand.nextDouble()*2.0-1.0;
+	}
+	v.normalize();
+	return v;
+}
+
+Vec3[] createCloud(int kind, int n)
+{
+	Vec3[] v = new Vec3[n];
+	for (i = 0; i < n; i++)
+	{
+		switch (kind)
+		{
+			case 0: v[i] = new Vec3(rand.nextDouble(), rand.nextDouble(), rand.nextDouble()); break;
+			case 1: v[i] = new Vec3(rand.nextGaussian(), rand.nextGaussian()*2.0, rand.nextGaussian()); break;
+			case 2: v[i] = randomDirectionVector(); break;
+			case 3: v[i] = new Vec3(rand.nextInt(4), rand.nextInt(4), rand.nextInt(4)); break;
+			case 4: v[i] = new Vec3(rand.nextDouble(), rand.nextDouble(), 0.0); break;
+			case 5: d = rand.nextDouble(); v[i] = new Vec3(d, 2.0*d, 3.0*d); break;
+			case 6: v[i] = (i < 2 ? randomDirectionVector() : new Vec3(v[rand.nextInt(i)])); break;
+			case 7: v[i] = randomDirectionVector(); v[i].x += 1e6; break;
+			case 8: v[i] = randomDirectionVector(); v[i].scale(1e-9); break;
+		}
+	}
+	return v;
+}
+
+geofit = new GeoFit();
+welzl = new Welzl();
+
+Thread.start
+{
+	println("\nComparing GeoFit to Welzl on " + clouds + " clouds of up to " + nMax + " points...");
+
+	points = 0; reported = 0;
+	larger = 0; smaller = 0; escapes = 0; supportDiff = 0; notExact = 0;
+	gTime = 0.0; wTime = 0.0; gPasses = 0; wPasses = 0;
+	kindLarger = new int[kinds.size()];
+
+	for (run = 0; run < clouds; run++)
+	{
+		kind = run % kinds.size();
+		n = 3 + rand.nextInt(nMax-2);
+		cloud = createCloud(kind, n);
+		points += n;
+
+		g = geofit.boundingSphere(cloud);
+		w = welzl.boundingSphere(cloud);
+		gTime += g.solverTime; wTime += w.solverTime;
+		gPasses += g.passes; wPasses += w.passes;
+
+		// Check, that GeoFit really encloses all points.
+
+		r2Max = 0.0;
+		for (v in cloud)
+			r2Max = Math.max(r2Max, g.center.distance2(v));
+		escaped = Math.sqrt(r2Max) > g.radius*(1.0+tol);
+		if (escaped)
+			escapes++;
+		if (g.fit != BoundingSphere.EXACT)
+			notExact++;
+
+		diff = (g.radius-w.radius)/w.radius;
+		if (diff > tol)
+		{
+			larger++;
+			kindLarger[kind]++;
+		}
+		if (diff < -tol)
+			smaller++;
+		if (g.supportPositions.size() != w.supportPositions.size())
+			supportDiff++;
+
+		if ((escaped || Math.abs(diff) > tol) && reported < reportMax)
+		{
+			reported++;
+			println("  " + kinds[kind] + ", " + n + " points: GeoFit " + g.radius + " (" + g.supportPositions.size() +
+			        " supports), Welzl " + w.radius + " (" + w.supportPositions.size() + " supports)" + (escaped ? ", points outside" : ""));
+		}
+	}
+
+	println("\nPoints in total          " + points);
+	println("GeoFit larger than exact " + larger);
+	println("GeoFit smaller than exact " + smaller);
+	println("GeoFit points outside    " + escapes);
+	println("GeoFit not EXACT         " + notExact);
+	println("Different support counts " + supportDiff);
+	println("\nLarger by cloud type");
+	for (k = 0; k < kinds.size(); k++)
+		println("  " + kinds[k] + "\t" + kindLarger[k]);
+	println("\nSolver times in ms, passes");
+	println("  GeoFit " + gTime + "\t" + gPasses);
+	println("  Welzl  " + wTime + "\t" + wPasses);
+
+} // thread
@@ -0,0 +1,81 @@
+
+// A test of solving a bounding sphere over partitions, map-reduce style.
+// Each partition is held by a worker thread, that only ever sends SphereSummaries.
+// The summaries travel in their binary form through byte arrays, as they would
+// through sockets between processes, and the bytes are counted. The merged sphere 
+// is compared to the one solved over all of the points in one place.
+
+import artofillusion.boundingsphere.*;
+import java.util.concurrent.*;
+
+// ===    USER PARAMETERS     ===
+
+partitions = 8;     // number of workers
+n = 250000;         // points per partition
+candidates = 64;    // candidates in each summary
+
+// === END OF USER PARAMETERS ===
+
+rand = new Random(0);
+pool = Executors.newFixedThreadPool(partitions);
+
+byte[] toBytes(SphereSummary s)
+{
+	def bytes = new ByteArrayOutputStream();
+	s.write(new DataOutputStream(bytes));
+	return bytes.toByteArray();
+}
+
+SphereSummary fromBytes(byte[] b)
+{
+	return SphereSummary.read(new DataInputStream(new ByteArrayInputStream(b)));
+}
+
+Thread.start
+{
+	println("\nCreating " + partitions + " partitions of " + n + " points...");
+	data = new Vec3Points[partitions];
+	all = new Vec3[partitions*n];
+	for (p = 0; p < partitions; p++)
+	{
+		offset = rand.nextGaussian()*2.0;
+		part = new Vec3[n];
+		for (i = 0; i < n; i++)
+		{
+			part[i] = new Vec3(rand.nextGaussian()+offset, rand.nextGaussian(), rand.nextGaussian());
+			all[p*n+i] = part[i];
+		}
+		data[p] = new Vec3Points(part);
+	}
+
+	sent = 0L;
+	t0 = System.nanoTime();
+
+	// The map step: every worker summarizes its partition.
+
+	futures = (0..<partitions).collect { p -> pool.submit({ toBytes(SphereSummary.summarize(p, data[p], candidates)) } as Callable) };
+	merge = new SphereMerge();
+	for (f in futures)
+	{
+		b = f.get();
+		sent += b.length;
+		merge.add(fromBytes(b));
+	}
+	println("Bound from the local spheres " + merge.bound().radius);
+
+	// The reduce step with the verification rounds.
+
+	sphere = merge.solve({ candidate ->
+		replies = (0..<partitions).collect { p -> pool.submit({ toBytes(SphereSummary.outside(p, data[p], candidate, candidates)) } as Callable) };
+		replies.collect { f -> b = f.get(); sent += b.length; fromBytes(b) }
+	});
+	t1 = System.nanoTime();
+
+	single = new GeoFit().boundingSphere(all);
+
+	println("Merged sphere    " + sphere.radius + " in " + merge.rounds() + " rounds, " + (t1-t0)*1e-6 + " ms");
+	println("Single solve     " + single.radius + " in " + single.solverTime + " ms");
+	println("Bytes transferred " + sent + ", instead of " + (long)all.length*24 + " for the points");
+	pool.shutdown();
+
+} // thread
@@ -0,0 +1,87 @@
+
+// A load test of SphereServer. An embedded server is started on a free port and a
+// number of client threads send requests of random sizes to it, as fast as they can.
+// Every answer is checked to enclose its points. The throughput and the p50 and p99
+// latencies, as seen by the clients, are printed at the end.
+
+import artofillusion.boundingsphere.*;
+import java.util.concurrent.*;
+
+// ===    USER PARAMETERS     ===
+
+clients = 16;        // concurrent connections
+requests = 2000;     // requests per client
+minPoints = 8;       // smallest request
+maxPoints = 2000;    // largest request
+largeEvery = 100;    // every n:th request has 100 times more points, 0 for none
+
+// === END OF USER PARAMETERS ===
+
+server = new SphereServer(0);
+port = server.start();
+pool = Executors.newFixedThreadPool(clients);
+
+Thread.start
+{
+	println("\nSphereServer on port " + port + ", " + clients + " clients x " + requests + " requests");
+
+	t0 = System.nanoTime();
+	futures = (0..<clients).collect { c -> pool.submit(
+	{
+		def rand = new Random(c);
+		def client = new SphereClient(port);
+		long[] lat = new long[requests];
+		int failures = 0;
+		try
+		{
+			for (int r = 0; r < requests; r++)
+			{
+				int n = minPoints+rand.nextInt(maxPoints-minPoints+1);
+				if (largeEvery > 0 && r % largeEvery == largeEvery-1)
+					n *= 100;
+				float[] xyz = new float[n*3];
+				for (int i = 0; i < xyz.length; i++)
+					xyz[i] = (float)rand.nextGaussian();
+
+				long s = System.nanoTime();
+				def bou = client.boundingSphere(xyz);
+				lat[r] = System.nanoTime()-s;
+
+				double r2 = bou.radius*bou.radius*(1.0+1e-12);
+				for (int i = 0; i < n; i++)
+				{
+					double dx = xyz[i*3]-bou.center.x, dy = xyz[i*3+1]-bou.center.y, dz = xyz[i*3+2]-bou.center.z;
+					if (dx*dx+dy*dy+dz*dz > r2)
+					{
+						failures++;
+						break;
+					}
+				}
+			}
+		}
+		finally
+		{
+			client.close();
+		}
+		return [lat, failures];
+	} as Callable) };
+
+	all = new long[clients*requests];
+	failures = 0;
+	for (c = 0; c < clients; c++)
+	{
+		res = futures[c].get();
+		System.arraycopy(res[0], 0, all, c*requests, requests);
+		failures += res[1];
+	}
+	seconds = (System.nanoTime()-t0)*1e-9;
+	Arrays.sort(all);
+
+	println("Throughput  : " + String.format("%.0f", all.length/seconds) + " requests/s");
+	println("Latency p50 : " + String.format("%.3f", all[(int)(all.length*0.50)]*1e-6) + " ms");
+	println("Latency p99 : " + String.format("%.3f", all[(int)(all.length*0.99)]*1e-6) + " ms");
+	println("Not enclosed: " + failures);
+
+	pool.shutdown();
+	server.stop();
+}
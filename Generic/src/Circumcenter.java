@@ -0,0 +1,217 @@
+/*
+    Copyright (C) 2019 by Petri Ihalainen
+    License: GPLv3
+    Disclaimer: The author will not take resposibility of any consequences
+    of using, modifying, handling or redistributing this software.
+*/
+
+package peteihis.tools3D.boundingsphere;
+
+import artofillusion.math.Vec3; // Replace by math package with 3D-vectors
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+    <b>Circumcenter</b> finds the center of the circle through 3 points or the sphere through
+    4 points, with an accuracy that does not depend on the shape of the support set.<p>
+
+    The fast path is plain double arithmetic relative to the first point. Its result is
+    accepted, when the denominator is large enough in relation to the lengths of the edges,
+    that it can not have lost more than a few digits to cancellation. Otherwise the center
+    is calculated again from the same doubles in exact arithmetic and only rounded at the
+    end. Nearly collinear triples and nearly coplanar quadruples then get their true
+    circumcenter instead of a random point far away.<p>
+
+    If the points are exactly collinear or coplanar, the circumcenter does not exist and the
+    center of the smallest sphere, that encloses the points, is given instead.
+
+    @author Petri Ihalainen
+    @author (peteihis)
+    @version 0.01, generic version
+*/
+
+final class Circumcenter
+{
+    // The fast path is trusted, when the squared sine of the angle between the edges
+    // (or the corresponding volume ratio of a tetrahedron) is above this. Rounding errors
+    // of the double path grow roughly as 1e-16 divided by it, so at least 8 digits remain.
+
+    private static final double FILTER = 1e-8;
+
+    private static final MathContext CONTEXT = MathContext.DECIMAL128;
+
+    // Units in the last place of the largest coordinate, that a center may be off by.
+
+    private static final double ROUNDING = 16*Math.ulp(1.0);
+
+    private Circumcenter()
+    {}
+
+    /** The center of the circle through 3 points. */
+
+    static Vec3 of3(Vec3 v1, Vec3 v2, Vec3 v3)
+    {
+        double ax = v2.x-v1.x, ay = v2.y-v1.y, az = v2.z-v1.z;
+        double bx = v3.x-v1.x, by = v3.y-v1.y, bz = v3.z-v1.z;
+        double a2 = ax*ax+ay*ay+az*az;
+        double b2 = bx*bx+by*by+bz*bz;
+        double nx = ay*bz-az*by, ny = az*bx-ax*bz, nz = ax*by-ay*bx;
+        double n2 = nx*nx+ny*ny+nz*nz;
+
+        if (n2 > FILTER*a2*b2)
+        {
+            // (|a|^2 b - |b|^2 a) x n / 2|n|^2
+
+            double px = a2*bx-b2*ax, py = a2*by-b2*ay, pz = a2*bz-b2*az;
+            double f = 0.5/n2;
+            return new Vec3(v1.x+(py*nz-pz*ny)*f, v1.y+(pz*nx-px*nz)*f, v1.z+(px*ny-py*nx)*f);
+        }
+        return exact3(v1, v2, v3);
+    }
+
+    /** The center of the sphere through 4 points. */
+
+    static Vec3 of4(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 v4)
+    {
+        Vec3 a = v2.minus(v1), b = v3.minus(v1), c = v4.minus(v1);
+        Vec3 bxc = b.cross(c), cxa = c.cross(a), axb = a.cross(b);
+        double det = a.dot(bxc);
+        double a2 = a.length2(), b2 = b.length2(), c2 = c.length2();
+
+        if (det*det > FILTER*a2*b2*c2)
+        {
+            // (|a|^2 (b x c) + |b|^2 (c x a) + |c|^2 (a x b)) / 2 a.(b x c)
+
+            double f = 0.5/det;
+            return new Vec3(v1.x+(a2*bxc.x+b2*cxa.x+c2*axb.x)*f,
+                            v1.y+(a2*bxc.y+b2*cxa.y+c2*axb.y)*f,
+                            v1.z+(a2*bxc.z+b2*cxa.z+c2*axb.z)*f);
+        }
+        return exact4(v1, v2, v3, v4);
+    }
+
+    /**
+        How much the squared distance from a center at (x, y, z) to the surface of a sphere
+        with the squared radius r2 can be off by rounding. The error of the center grows with
+        the size of the coordinates, not with the radius, so a small sphere far from the origin
+        needs more room than its radius alone would give.
+    */
+
+    static double rounding2(double x, double y, double z, double r2)
+    {
+        double r = Math.sqrt(r2);
+        double size = Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z)))+r;
+        return 2.0*r*size*ROUNDING;
+    }
+
+    /** The circle center in exact arithmetic. */
+
+    private static Vec3 exact3(Vec3 v1, Vec3 v2, Vec3 v3)
+    {
+        BigDecimal[] a = minus(v2, v1), b = minus(v3, v1);
+        BigDecimal[] n = cross(a, b);
+        BigDecimal d = dot(n, n);
+        if (d.signum() == 0)
+            return enclosing3(v1, v2, v3);
+
+        BigDecimal[] p = minus(times(b, dot(a, a)), times(a, dot(b, b)));
+        return plus(v1, cross(p, n), d.add(d));
+    }
+
+    /** The sphere center in exact arithmetic. */
+
+    private static Vec3 exact4(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 v4)
+    {
+        BigDecimal[] a = minus(v2, v1), b = minus(v3, v1), c = minus(v4, v1);
+        BigDecimal[] bxc = cross(b, c);
+        BigDecimal det = dot(a, bxc);
+        if (det.signum() == 0)
+            return enclosing4(v1, v2, v3, v4);
+
+        BigDecimal[] p = plus(plus(times(bxc, dot(a, a)), times(cross(c, a), dot(b, b))), times(cross(a, b), dot(c, c)));
+        return plus(v1, p, det.add(det));
+    }
+
+    /** Center of the smallest sphere around 3 collinear points: the middle of the two furthest apart. */
+
+    private static Vec3 enclosing3(Vec3 v1, Vec3 v2, Vec3 v3)
+    {
+        double d12 = v1.distance2(v2), d23 = v2.distance2(v3), d31 = v3.distance2(v1);
+        if (d12 >= d23 && d12 >= d31)
+            return v1.plus(v2).times(0.5);
+        if (d23 >= d31)
+            return v2.plus(v3).times(0.5);
+        return v3.plus(v1).times(0.5);
+    }
+
+    /** Center of the smallest sphere around 4 coplanar points, found among the triples. */
+
+    private static Vec3 enclosing4(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 v4)
+    {
+        Vec3[] v = {v1, v2, v3, v4};
+        Vec3 best = null;
+        double r2best = Double.POSITIVE_INFINITY;
+        for (int skip = 0; skip < 4; skip++)
+        {
+            Vec3[] t = new Vec3[3];
+            int n = 0;
+            for (int i = 0; i < 4; i++)
+                if (i != skip)
+                    t[n++] = v[i];
+            Vec3 c = of3(t[0], t[1], t[2]);
+            double r2 = 0.0;
+            for (Vec3 p : v)
+                r2 = Math.max(r2, c.distance2(p));
+            if (r2 < r2best)
+            {
+                r2best = r2;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static BigDecimal[] minus(Vec3 p, Vec3 q)
+    {
+        return new BigDecimal[] {new BigDecimal(p.x).subtract(new BigDecimal(q.x)),
+                                 new BigDecimal(p.y).subtract(new BigDecimal(q.y)),
+                                 new BigDecimal(p.z).subtract(new BigDecimal(q.z))};
+    }
+
+    private static BigDecimal[] minus(BigDecimal[] p, BigDecimal[] q)
+    {
+        return new BigDecimal[] {p[0].subtract(q[0]), p[1].subtract(q[1]), p[2].subtract(q[2])};
+    }
+
+    private static BigDecimal[] plus(BigDecimal[] p, BigDecimal[] q)
+    {
+        return new BigDecimal[] {p[0].add(q[0]), p[1].add(q[1]), p[2].add(q[2])};
+    }
+
+    private static BigDecimal[] times(BigDecimal[] p, BigDecimal f)
+    {
+        return new BigDecimal[] {p[0].multiply(f), p[1].multiply(f), p[2].multiply(f)};
+    }
+
+    private static BigDecimal dot(BigDecimal[] p, BigDecimal[] q)
+    {
+        return p[0].multiply(q[0]).add(p[1].multiply(q[1])).add(p[2].multiply(q[2]));
+    }
+
+    private static BigDecimal[] cross(BigDecimal[] p, BigDecimal[] q)
+    {
+        return new BigDecimal[] {p[1].multiply(q[2]).subtract(p[2].multiply(q[1])),
+                                 p[2].multiply(q[0]).subtract(p[0].multiply(q[2])),
+                                 p[0].multiply(q[1]).subtract(p[1].multiply(q[0]))};
+    }
+
+    /** The origin plus the exact offset divided by the exact denominator, rounded once to double. */
+
+    private static Vec3 plus(Vec3 origin, BigDecimal[] offset, BigDecimal denominator)
+    {
+        BigDecimal[] o = {new BigDecimal(origin.x), new BigDecimal(origin.y), new BigDecimal(origin.z)};
+        return new Vec3(o[0].add(offset[0].divide(denominator, CONTEXT)).doubleValue(),
+                        o[1].add(offset[1].divide(denominator, CONTEXT)).doubleValue(),
+                        o[2].add(offset[2].divide(denominator, CONTEXT)).doubleValue());
+    }
+}
@@ -25,6 +25,13 @@ import java.util.ArrayList;
 public class GeoFit
 {
     private double radius2; // Squared radius
+
+    // Points outside the sphere by less than this relative amount of the squared radius,
+    // plus the rounding of the coordinates, are taken as lying on the surface. Without it,
+    // rounding errors let points, that are on a common circle or sphere, replace each other
+    // as supports without an end.
+
+    private static final double SURFACE = 1e-13;
     private Vec3 center, exo;
     private int fit;
     private ArrayList<Vec3> supports;
@@ -65,7 +72,7 @@ public class GeoFit
         supports.add(mostDistant(supports.get(0), center.distance2(supports.get(0)), vertex));
         center = supports.get(0).plus(supports.get(1)).times(0.5);
         radius2 = Math.max(center.distance2(supports.get(0)), (center.distance2(supports.get(1))));
-        exo = mostDistant(center, radius2, vertex);
+        exo = onSurface(mostDistant(center, radius2, vertex));
 
         if (exo == null)
             return;
@@ -75,13 +82,27 @@ public class GeoFit
 
         int supportCount = supports.size(); // = 2
 
+        // The subsets can only have up to four supports, so the count of five
+        // is never reached and the loop ends, when no point is left outside.
+
         while (supportCount < 5 && exo != null)
         {
             while (supports.size() == supportCount && exo != null)
             {
                 supports.add(exo);
+                double r2before = radius2;
                 checkSubGroups(supports);
-                exo = mostDistant(center, radius2, vertex);
+                if (radius2 <= r2before)
+                {
+                    // Rounding errors have stopped the growth. Reach the most distant point and stop.
+
+                    Vec3 far = mostDistant(center, radius2, vertex);
+                    if (far != null)
+                        radius2 = center.distance2(far);
+                    fit = BoundingSphere.APPROXIMATE;
+                    return;
+                }
+                exo = onSurface(mostDistant(center, radius2, vertex));
             }
             supportCount = supports.size();
         }
@@ -95,86 +116,74 @@ public class GeoFit
     /**
         Check if a smaller set of supports can produce a sphere, that
         encoloses all the suggested supports. If so, the smallest possible
-        one is selected and the obsolete enclosed support excluded.
+        one is selected and the obsolete enclosed supports excluded.
     */
 
     private void checkSubGroups(ArrayList<Vec3> supports)
     {
         int size = supports.size();
+        int last = size-1;
+        Vec3[] all = supports.toArray(new Vec3[size]);
 
-        // Create subsets, where one of the supports is missing.
-        // We are skippiung the last one, because we already know that the
-        // last added point does not fit the set, that was there before it.
+        // Try every subset, that includes the last added point. We already know that
+        // the last added point does not fit the set, that was there before it, so it
+        // must be on the surface. The subsets are the bit masks of the other supports.
+        // Dropping only one support at a time would miss the cases, where the last
+        // point and just one of the others define the sphere.
 
-        Vec3[][] groups = new Vec3[size-1][size-1];   // sub sets
-        Vec3[] cnt = new Vec3[size-1];                // centers
-        double[] r2  = new double[size-1];            // squared radii
+        double r2fit = Double.POSITIVE_INFINITY, r2least = Double.POSITIVE_INFINITY;
+        int enclosing = -1, least = -1;
+        Vec3 cFit = null, cLeast = null;
 
-        int n;
-        for (int i = 0; i < groups.length; i++)
+        for (int mask = 1; mask < 1 << last; mask++)
         {
-            n = 0;
-            for (int j = 0; j < size; j++)
+            int n = Integer.bitCount(mask)+1;
+            if (n > 4)
+                continue;
+            Vec3[] group = new Vec3[n];
+            int k = 0;
+            for (int j = 0; j < last; j++)
+                if ((mask & 1 << j) != 0)
+                    group[k++] = all[j];
+            group[k] = all[last];
+
+            Vec3 c = centerOf(group);
+            double r2 = radius2Of(c, group);
+            if (r2 >= r2fit)
+                continue;
+
+            // Check if the ones that were left out of this set fit in.
+
+            double r2all = radius2Of(c, all);
+            if (r2all <= r2+slack2(c, r2))
             {
-                if (j != i)
-                {
-                    groups[i][n] = supports.get(j);
-                    n++;
-                }
+                r2fit = Math.max(r2, r2all);
+                enclosing = mask;
+                cFit = c;
             }
-        }
-
-        // Calculate parameters for the sub sets and check if they can enclose
-        // the entire set. At the same time, make note of the smallest one that
-        // can enclose all.
-
-        double r2j, r2fit = Double.POSITIVE_INFINITY;
-        int enclosing = -1;
-        boolean[] allFit = new boolean[size];
-
-        for (int i = 0; i < groups.length; i++) // The last one is the one that brought us here anyway...
-        {
-            cnt[i] = centerOf(groups[i]);
-            r2[i] = radius2Of(cnt[i], groups[i]);
-            allFit[i] = true;
-
-            // Check if the one that was left out of this set fits in.
-
-            if (cnt[i].distance2(supports.get(i)) > r2[i])
-                allFit[i] = false;
-
-            // Check is if this group is allFit and smaller than the previous allFit
-
-            if (allFit[i] && r2[i] < r2fit)
+            else if (r2all < r2least)
             {
-                r2fit = r2[i];
-                enclosing = i;
+                r2least = r2all;
+                least = mask;
+                cLeast = c;
             }
         }
 
-        // Set the sphere parameters to the smallest enclosing subset or
-        // if one was not found, recalculate parameters with the entire set.
+        // If rounding errors let none of the subsets enclose all, take the one that
+        // needs the least growth to do it.
 
-        if (enclosing > -1)
-        {
-            supports.clear();
-            for (Vec3 g: groups[enclosing])
-                supports.add(g);
-            center = cnt[enclosing];
-            radius2 = r2[enclosing];
-        }
-        else
+        if (enclosing < 0)
         {
-            if (supports.size() == 2)
-                center = (supports.get(0).plus(supports.get(1)).times(0.5));
-            else if (supports.size() == 3)
-                center = centerOf3(supports.get(0), supports.get(1), supports.get(2));
-            else
-                center = centerOf4(supports.get(0), supports.get(1), supports.get(2), supports.get(3));
-            radius2 = 0.0;
-            for(Vec3 s: supports)
-                radius2 = Math.max(radius2, center.distance2(s));
+            enclosing = least;
+            cFit = cLeast;
+            r2fit = r2least;
         }
+
+        for (int j = last-1; j >= 0; j--)
+            if ((enclosing & 1 << j) == 0)
+                supports.remove(j);
+        center = cFit;
+        radius2 = r2fit;
     }
 
     /**
@@ -206,6 +215,30 @@ public class GeoFit
         return mostDistant;
     }
 
+    /**
+        If the most distant point <code>exo</code> is outside the sphere by no more than
+        the rounding errors, the radius is grown to reach it and <code>null</code> returned.
+        Since no other point is further away, the sphere then encloses all.
+    */
+
+    private Vec3 onSurface(Vec3 exo)
+    {
+        if (exo == null)
+            return null;
+        double r2 = center.distance2(exo);
+        if (r2 > radius2+slack2(center, radius2))
+            return exo;
+        radius2 = r2;
+        return null;
+    }
+
+    /** How far outside a sphere at c with the squared radius r2 a point can be and still be on it. */
+
+    private static double slack2(Vec3 c, double r2)
+    {
+        return r2*SURFACE+Circumcenter.rounding2(c.x, c.y, c.z, r2);
+    }
+
     /**
         Calculates the "box center" (AABB center) for a set of vertices.
     */
@@ -238,6 +271,8 @@ public class GeoFit
         Find the circumcenter of up to 4 support points.
         In 3D-space 4 is the highest possible number of
         supports that are needed to define a sphere.
+        See <code>Circumcenter</code> for the handling of
+        nearly degenerate sets.
     */
 
     private Vec3 centerOf(Vec3[] v)
@@ -245,50 +280,8 @@ public class GeoFit
         if (v.length == 2)
             return (v[0].plus(v[1]).times(0.5));
         if (v.length == 3)
-            return centerOf3(v[0], v[1], v[2]);
-        return centerOf4(v[0], v[1], v[2], v[3]);
-    }
-
-    /**
-        Find the circumcenter of 3 support points.
-    */
-
-    private Vec3 centerOf3(Vec3 v1, Vec3 v2, Vec3 v3)
-    {
-        // I did not mark down, where I got this.
-        // It is based on calculating barycentric weights
-        // for the corner points.
-
-        double a2 = v2.distance2(v3);
-        double b2 = v3.distance2(v1);
-        double c2 = v1.distance2(v2);
-        double wA = a2*(b2+c2-a2);
-        double wB = b2*(c2+a2-b2);
-        double wC = c2*(a2+b2-c2);
-        double wSum = wA+wB+wC;
-
-        return v1.times(wA).plus(v2.times(wB).plus(v3.times(wC))).times(1.0/wSum);
-    }
-
-    /**
-        Find the circumcenter of 4 support points.
-    */
-
-    private Vec3 centerOf4(Vec3 v1, Vec3 v2, Vec3 v3, Vec3 v4)
-    {
-        // ...And I can't remember how I came up with this one either...
-        // Anyway, the problem is simplified into two points and a straight line
-        // on which the center point is at equal distance from both of the two.
-
-        Vec3 faceCenter = centerOf3(v1, v2, v3);
-        Vec3 faceCenterTov4  = v4.minus(faceCenter);
-        Vec3 dirDelta = (v2.minus(v1).cross(v3.minus(v1)));
-        dirDelta.normalize();
-
-        double r2face = (faceCenter.distance2(v1)+faceCenter.distance2(v2)+faceCenter.distance2(v3))/3.0;
-        double delta = (faceCenterTov4.length2()-r2face)/(2*faceCenterTov4.dot(dirDelta));
-
-        return faceCenter.plus(dirDelta.times(delta));
+            return Circumcenter.of3(v[0], v[1], v[2]);
+        return Circumcenter.of4(v[0], v[1], v[2], v[3]);
     }
 
     /**